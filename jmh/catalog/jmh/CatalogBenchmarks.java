@@ -0,0 +1,40 @@
+package catalog.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the catalog benchmarks with JMH.
+ *
+ * Takes the usual JMH command line (e.g. -p titles=1000,100000 QueryBenchmarks) and passes the db.*
+ *  and pool.* system properties on to the forked JVMs, so they use the same database. On H2 the
+ *  trigger benchmarks are left out, since H2 does not run MySQL trigger bodies.
+ *
+ * Usage: java -Ddb.url=... -jar target/benchmarks.jar [JMH options] [benchmark regexps]
+ *  or, through Maven: mvn -P jmh[,h2] package exec:exec -Djmh.args="..."
+ */
+public class CatalogBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        List<String> jvmArgs = new ArrayList<>(commandLine.getJvmArgsAppend().orElse(List.of()));
+        for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+            String name = property.getKey().toString();
+            if (name.startsWith("db.") || name.startsWith("pool.")) {
+                jvmArgs.add("-D" + name + "=" + property.getValue());
+            }
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .jvmArgsAppend(jvmArgs.toArray(new String[0]));
+        if (System.getProperty("db.url", "").startsWith("jdbc:h2:")) {
+            options.exclude(".*Trigger.*");
+        }
+        new Runner(options.build()).run();
+    }
+}
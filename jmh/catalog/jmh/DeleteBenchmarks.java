@@ -0,0 +1,136 @@
+package catalog.jmh;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Deleting authors together with their titles: through the DeleteAuthor trigger, through
+ *  CascadeDeleteService, and by deleting authorISBN rows under the DeleteAuthorISBN trigger.
+ * Every trial loads a fresh catalog of 'titles' titles and installs only the trigger being measured.
+ *  Each iteration deletes one slice of authors (CatalogBenchmark.DELETE_FRACTION of them), picked
+ *  untimed from the rows still in the table, so the iterations never delete the same rows twice.
+ * The trigger benchmarks need MySQL; CatalogBenchmarks leaves them out on H2.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class DeleteBenchmarks {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int titles;
+
+    private Function<String, Callable<Object>> workloads;
+
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+        workloads = Workloads.open(titles, true);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        Workloads.close(workloads);
+    }
+
+    /**
+     * The state of one delete benchmark: the trigger it installs and the authors it picks.
+     */
+    @State(Scope.Benchmark)
+    public abstract static class Delete {
+        Callable<Object> delete;
+        private Callable<Object> select;
+
+        abstract String trigger();
+
+        abstract String selection();
+
+        abstract String workload();
+
+        @Setup(Level.Trial)
+        public void prepare(DeleteBenchmarks catalog) throws Exception {
+            if (trigger() != null) {
+                catalog.workloads.apply(trigger()).call();
+            }
+            select = catalog.workloads.apply(selection());
+            delete = catalog.workloads.apply(workload());
+        }
+
+        @Setup(Level.Iteration)
+        public void selectAuthors() throws Exception {
+            select.call();
+        }
+    }
+
+    public static class ByAuthorTrigger extends Delete {
+        String trigger() {
+            return "createDeleteAuthorTrigger";
+        }
+
+        String selection() {
+            return "selectAuthorsToDelete";
+        }
+
+        String workload() {
+            return "deleteAuthorTrigger";
+        }
+    }
+
+    public static class ByService extends Delete {
+        String trigger() {
+            return null;
+        }
+
+        String selection() {
+            return "selectAuthorsToDelete";
+        }
+
+        String workload() {
+            return "deleteAuthorService";
+        }
+    }
+
+    public static class ByAuthorISBNTrigger extends Delete {
+        String trigger() {
+            return "createDeleteAuthorISBNTrigger";
+        }
+
+        String selection() {
+            return "selectLinkedAuthorsToDelete";
+        }
+
+        String workload() {
+            return "deleteAuthorISBNTrigger";
+        }
+    }
+
+    @Benchmark
+    public Object deleteAuthorTrigger(ByAuthorTrigger state) throws Exception {
+        return state.delete.call();
+    }
+
+    @Benchmark
+    public Object deleteAuthorService(ByService state) throws Exception {
+        return state.delete.call();
+    }
+
+    @Benchmark
+    public Object deleteAuthorISBNTrigger(ByAuthorISBNTrigger state) throws Exception {
+        return state.delete.call();
+    }
+}
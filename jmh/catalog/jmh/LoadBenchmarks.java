@@ -0,0 +1,66 @@
+package catalog.jmh;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creating the schema and seeding a generated catalog of 'titles' titles into empty tables.
+ * Each iteration is one run of the operation, measured on its own, with empty tables created
+ *  untimed before every seed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class LoadBenchmarks {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int titles;
+
+    private Function<String, Callable<Object>> workloads;
+    private Callable<Object> schemaSetup;
+    private Callable<Object> seed;
+
+    @Setup(Level.Trial)
+    public void open() throws Exception {
+        workloads = Workloads.open(titles, false);
+        schemaSetup = workloads.apply("schemaSetup");
+        seed = workloads.apply("seed");
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyTables() throws Exception {
+        schemaSetup.call();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        Workloads.close(workloads);
+    }
+
+    @Benchmark
+    public Object schemaSetup() throws Exception {
+        return schemaSetup.call();
+    }
+
+    @Benchmark
+    public Object seed() throws Exception {
+        return seed.call();
+    }
+}
@@ -0,0 +1,95 @@
+package catalog.jmh;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The catalog queries, printed into a discarding stream, and the full-table listings read through
+ *  server-side cursors. Every trial loads a fresh generated catalog of 'titles' titles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class QueryBenchmarks {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int titles;
+
+    private Function<String, Callable<Object>> workloads;
+    private Callable<Object> printAuthorsByLastName;
+    private Callable<Object> printAllPublishers;
+    private Callable<Object> printTitles;
+    private Callable<Object> printBooksByPublisher;
+    private Callable<Object> printAuthorISBNs;
+    private Callable<Object> streamTitles;
+    private Callable<Object> streamAuthorISBNs;
+
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+        workloads = Workloads.open(titles, true);
+        printAuthorsByLastName = workloads.apply("printAuthorsByLastName");
+        printAllPublishers = workloads.apply("printAllPublishers");
+        printTitles = workloads.apply("printTitles");
+        printBooksByPublisher = workloads.apply("printBooksByPublisher");
+        printAuthorISBNs = workloads.apply("printAuthorISBNs");
+        streamTitles = workloads.apply("streamTitles");
+        streamAuthorISBNs = workloads.apply("streamAuthorISBNs");
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        Workloads.close(workloads);
+    }
+
+    @Benchmark
+    public Object printAuthorsByLastName() throws Exception {
+        return printAuthorsByLastName.call();
+    }
+
+    @Benchmark
+    public Object printAllPublishers() throws Exception {
+        return printAllPublishers.call();
+    }
+
+    @Benchmark
+    public Object printTitles() throws Exception {
+        return printTitles.call();
+    }
+
+    @Benchmark
+    public Object printBooksByPublisher() throws Exception {
+        return printBooksByPublisher.call();
+    }
+
+    @Benchmark
+    public Object printAuthorISBNs() throws Exception {
+        return printAuthorISBNs.call();
+    }
+
+    @Benchmark
+    public Object streamTitles() throws Exception {
+        return streamTitles.call();
+    }
+
+    @Benchmark
+    public Object streamAuthorISBNs() throws Exception {
+        return streamAuthorISBNs.call();
+    }
+}
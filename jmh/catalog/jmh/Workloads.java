@@ -0,0 +1,31 @@
+package catalog.jmh;
+
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+/**
+ * Opens the catalog workloads of CatalogBenchmark, which lives in the default package and so can only be
+ *  reached by reflection from here. Reflection is used once per trial; the workloads themselves are
+ *  called through Callable.
+ */
+final class Workloads {
+
+    private Workloads() {
+    }
+
+    /**
+     * @return CatalogBenchmark.open(titles, seed), whose apply(name) returns the workload with that name
+     */
+    @SuppressWarnings("unchecked")
+    static Function<String, Callable<Object>> open(int titles, boolean seed) throws Exception {
+        Class<?> benchmark = Class.forName("CatalogBenchmark");
+        return (Function<String, Callable<Object>>) benchmark.getMethod("open", int.class, boolean.class)
+                .invoke(null, titles, seed);
+    }
+
+    static void close(Function<String, Callable<Object>> workloads) throws Exception {
+        if (workloads != null) {
+            ((AutoCloseable) workloads).close();
+        }
+    }
+}
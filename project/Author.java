@@ -0,0 +1,5 @@
+/**
+ * One row of the 'authors' table.
+ */
+public record Author(int authorID, String firstName, String lastName) {
+}
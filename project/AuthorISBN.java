@@ -0,0 +1,5 @@
+/**
+ * One row of the 'authorISBN' table, linking an author to one of their books.
+ */
+public record AuthorISBN(int authorID, String isbn) {
+}
@@ -0,0 +1,299 @@
+// Import SQL package
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads catalog rows in bulk with batched prepared statements.
+ * Rows are sent to the server with addBatch/executeBatch and committed in explicit
+ * transactions of 'batchSize' rows, instead of one autocommitted round trip per row.
+ * Row counts and throughput are recorded per table and can be printed with printReport();
+ *  the latency and size of every batch are also recorded in Metrics as "load.<table>".
+ *
+ * Foreign keys are resolved on the client: the generated authorID and publisherID of every
+ *  inserted row are captured into the name-to-ID maps of a CatalogKeys, and the isbn of every
+ *  inserted title is remembered by title, so 'titles' and 'authorISBN' rows are inserted with literal keys
+ *  instead of running a sub-SELECT per row. Authors, publishers and titles therefore have to
+ *  be loaded before the rows that reference them. Keys are recorded only once their batch has
+ *  committed, so a batch that rolls back leaves no keys behind for rows that do not exist.
+ * Callers that can resolve the keys themselves, like CatalogGenerator, can instead collect the generated
+ *  IDs with their own KeyCollector and load 'titles' and 'authorISBN' rows by key, so no names are kept.
+ */
+public class BulkLoader {
+
+    static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final Connection conn;
+    private final int batchSize;
+    // Statistics per table, kept in the order the tables were loaded
+    private final Map<String, TableStats> stats = new LinkedHashMap<>();
+    // Keys of the rows inserted so far, used to resolve the references of later rows
+    private final CatalogKeys keys;
+    private CommitHook commitHook;
+
+    /**
+     * @param conn the connection the rows are loaded through
+     * @param batchSize the number of rows sent and committed together
+     */
+    public BulkLoader(Connection conn, int batchSize) {
+        this(conn, batchSize, new CatalogKeys());
+    }
+
+    /**
+     * @param conn the connection the rows are loaded through
+     * @param batchSize the number of rows sent and committed together
+     * @param keys the keys used to resolve references, which may be shared with other loaders
+     */
+    public BulkLoader(Connection conn, int batchSize, CatalogKeys keys) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1: " + batchSize);
+        }
+        this.conn = conn;
+        this.batchSize = batchSize;
+        this.keys = keys;
+    }
+
+    /**
+     * Set a hook that runs inside every batch transaction, right before it is committed.
+     * @param commitHook the hook, or null to remove it
+     */
+    public void setCommitHook(CommitHook commitHook) {
+        this.commitHook = commitHook;
+    }
+
+    /**
+     * Load rows into the 'authors' table.
+     * @param rows rows in the form { firstName, lastName }
+     * @return the number of rows inserted
+     */
+    public long loadAuthors(Iterable<String[]> rows) throws SQLException {
+        return loadAuthors(rows, (row, generatedKey) -> keys.putAuthor(row[0], row[1], generatedKey));
+    }
+
+    /**
+     * Load rows into the 'authors' table, handing the generated authorIDs to 'ids' instead of recording them by name.
+     * @param rows rows in the form { firstName, lastName }
+     * @param ids receives every row with its authorID once its batch has committed, in the order of 'rows'
+     * @return the number of rows inserted
+     */
+    long loadAuthors(Iterable<String[]> rows, KeyCollector ids) throws SQLException {
+        return load("authors", SQL.INSERT_AUTHOR, rows, (ps, row) -> {
+            ps.setString(1, row[0]);
+            ps.setString(2, row[1]);
+        }, true, ids);
+    }
+
+    /**
+     * Load rows into the 'publishers' table.
+     * @param rows rows in the form { publisherName }
+     * @return the number of rows inserted
+     */
+    public long loadPublishers(Iterable<String[]> rows) throws SQLException {
+        return loadPublishers(rows, (row, generatedKey) -> keys.putPublisher(row[0], generatedKey));
+    }
+
+    /**
+     * Load rows into the 'publishers' table, handing the generated publisherIDs to 'ids' instead of recording them by name.
+     * @param rows rows in the form { publisherName }
+     * @param ids receives every row with its publisherID once its batch has committed, in the order of 'rows'
+     * @return the number of rows inserted
+     */
+    long loadPublishers(Iterable<String[]> rows, KeyCollector ids) throws SQLException {
+        return load("publishers", SQL.INSERT_PUBLISHER, rows, (ps, row) -> ps.setString(1, row[0]), true, ids);
+    }
+
+    /**
+     * Load rows into the 'titles' table.
+     * @param rows rows in the form { isbn, editionNumber, Year, publisherName, price, title }
+     * @return the number of rows inserted
+     */
+    public long loadTitles(Iterable<String[]> rows) throws SQLException {
+        // Titles are keyed by their isbn, which is already known, so no generated keys are needed
+        return load("titles", SQL.INSERT_TITLE, rows, (ps, row) -> bindTitle(ps, row, keys.publisherID(row[3])),
+                false, (row, generatedKey) -> keys.putTitle(row[5], row[0]));
+    }
+
+    /**
+     * Load rows into the 'titles' table whose publisher is already resolved, without recording their isbns.
+     * @param rows rows in the form { isbn, editionNumber, Year, publisherID, price, title }
+     * @return the number of rows inserted
+     */
+    long loadTitlesByKey(Iterable<String[]> rows) throws SQLException {
+        return load("titles", SQL.INSERT_TITLE, rows, (ps, row) -> bindTitle(ps, row, Integer.parseInt(row[3])),
+                false, null);
+    }
+
+    private static void bindTitle(PreparedStatement ps, String[] row, int publisherID) throws SQLException {
+        ps.setString(1, row[0]);
+        ps.setInt(2, Integer.parseInt(row[1]));
+        ps.setShort(3, Short.parseShort(row[2]));
+        ps.setInt(4, publisherID);
+        ps.setBigDecimal(5, new BigDecimal(row[4]));
+        ps.setString(6, row[5]);
+    }
+
+    /**
+     * Load rows into the 'authorISBN' table.
+     * @param rows rows in the form { firstName, lastName, title }
+     * @return the number of rows inserted
+     */
+    public long loadAuthorISBNs(Iterable<String[]> rows) throws SQLException {
+        return load("authorISBN", SQL.INSERT_AUTHOR_ISBN, rows, (ps, row) -> {
+            ps.setInt(1, keys.authorID(row[0], row[1]));
+            ps.setString(2, keys.isbn(row[2]));
+        }, false, null);
+    }
+
+    /**
+     * Load rows into the 'authorISBN' table whose author and title are already resolved.
+     * @param rows rows in the form { authorID, isbn }
+     * @return the number of rows inserted
+     */
+    long loadAuthorISBNsByKey(Iterable<String[]> rows) throws SQLException {
+        return load("authorISBN", SQL.INSERT_AUTHOR_ISBN, rows, (ps, row) -> {
+            ps.setInt(1, Integer.parseInt(row[0]));
+            ps.setString(2, row[1]);
+        }, false, null);
+    }
+
+    /**
+     * Print the number of rows, batches, elapsed time and rows per second for every table loaded so far.
+     */
+    public void printReport() {
+        System.out.printf("%-12s| %-10s| %-8s| %-10s| %-10s\n", "table", "rows", "batches", "seconds", "rows/sec");
+        System.out.println("-------------------------------------------------------------");
+        for (TableStats ts : stats.values()) {
+            double seconds = ts.nanos / 1e9;
+            double rate = seconds > 0 ? ts.rows / seconds : 0;
+            System.out.printf("%-12s| %-10d| %-8d| %-10.3f| %-10.0f\n", ts.table, ts.rows, ts.batches, seconds, rate);
+        }
+        System.out.println();
+    }
+
+    /**
+     * Insert every row with the given statement, committing once per batch.
+     * If a batch fails, the open transaction is rolled back and the exception is rethrown;
+     *  batches committed before the failure stay in the database.
+     * @param generatedKeys whether to read the generated key of every inserted row
+     * @param keyCollector receives every row once its batch has committed, with its generated key
+     *  (0 if generatedKeys is false), or null if the rows need not be recorded
+     */
+    private long load(String table, String sql, Iterable<String[]> rows, RowBinder binder,
+                      boolean generatedKeys, KeyCollector keyCollector) throws SQLException {
+        TableStats ts = stats.computeIfAbsent(table, TableStats::new);
+        long rowsBefore = ts.rows;
+        boolean autoCommit = conn.getAutoCommit();
+        long start = System.nanoTime();
+        conn.setAutoCommit(false);
+        int keyMode = generatedKeys ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS;
+        try (PreparedStatement ps = conn.prepareStatement(sql, keyMode)) {
+            List<String[]> batch = new ArrayList<>(batchSize);
+            for (String[] row : rows) {
+                binder.bind(ps, row);
+                ps.addBatch();
+                batch.add(row);
+                if (batch.size() == batchSize) {
+                    flush(ps, ts, batch, generatedKeys, keyCollector);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                flush(ps, ts, batch, generatedKeys, keyCollector);
+            }
+        } catch (SQLException | RuntimeException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        } finally {
+            ts.nanos += System.nanoTime() - start;
+            conn.setAutoCommit(autoCommit);
+        }
+        return ts.rows - rowsBefore;
+    }
+
+    private void flush(PreparedStatement ps, TableStats ts, List<String[]> batch,
+                       boolean generatedKeys, KeyCollector keyCollector) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            flushBatch(ps, ts, batch, generatedKeys, keyCollector);
+            ts.metrics.recordBatch(start, batch.size(), batch.size());
+        } catch (SQLException | RuntimeException e) {
+            ts.metrics.error();
+            throw e;
+        }
+    }
+
+    private void flushBatch(PreparedStatement ps, TableStats ts, List<String[]> batch,
+                            boolean generatedKeys, KeyCollector keyCollector) throws SQLException {
+        int[] counts = ps.executeBatch();
+        int[] keyValues = new int[batch.size()];
+        if (generatedKeys) {
+            // Generated keys come back in the same order the rows were added to the batch
+            int i = 0;
+            try (ResultSet generated = ps.getGeneratedKeys()) {
+                while (i < batch.size() && generated.next()) {
+                    keyValues[i++] = generated.getInt(1);
+                }
+            }
+            if (i != batch.size()) {
+                throw new SQLException("Expected " + batch.size() + " generated keys for " + ts.table + " but got " + i);
+            }
+        }
+        if (commitHook != null) {
+            commitHook.beforeCommit(ts.table, batch.size());
+        }
+        conn.commit();
+        if (keyCollector != null) {
+            for (int i = 0; i < batch.size(); i++) {
+                keyCollector.collect(batch.get(i), keyValues[i]);
+            }
+        }
+        ts.batches++;
+        for (int count : counts) {
+            // Drivers that rewrite batches into multi-row inserts may not report per-row counts
+            ts.rows += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+        }
+    }
+
+    /**
+     * Binds the fields of one row to the parameters of a prepared statement.
+     */
+    interface RowBinder {
+        void bind(PreparedStatement ps, String[] row) throws SQLException;
+    }
+
+    /**
+     * Receives one inserted row, after its batch has committed, together with its generated key.
+     */
+    interface KeyCollector {
+        void collect(String[] row, int generatedKey);
+    }
+
+    /**
+     * Runs inside a batch transaction after the batch has been executed and before it is committed,
+     *  so any statements it issues on the loader's connection commit or roll back together with the batch.
+     */
+    interface CommitHook {
+        void beforeCommit(String table, int rows) throws SQLException;
+    }
+
+    private static final class TableStats {
+        final String table;
+        // Latency and size of every batch, from executeBatch until the commit
+        final QueryMetrics metrics;
+        long rows;
+        long batches;
+        long nanos;
+
+        TableStats(String table) {
+            this.table = table;
+            this.metrics = Metrics.query("load." + table);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+// Import SQL package
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deletes authors together with their titles using set-based statements.
+ *
+ * A book cannot exist without an author, so deleting an author also deletes every title they wrote,
+ *  including titles written together with other authors. Instead of a trigger that runs once per
+ *  deleted author, the IDs are processed in chunks; for each chunk, one query finds the ISBNs of the
+ *  affected titles, one statement deletes those titles and one deletes the authors. The foreign keys
+ *  of 'authorISBN' cascade, so its rows for the deleted authors and titles go with them.
+ * Each chunk is its own transaction, so a large delete never holds locks on the whole set at once.
+ *  Within it, the authors and their authorISBN rows are read FOR UPDATE. Adding an authorISBN row
+ *  has to check the author row for its foreign key, so no title can be linked to one of the
+ *  authors between finding the ISBNs and deleting the authors; without the locks, such a title
+ *  would lose its only author to the cascade and be left behind.
+ *
+ * If the service has a CatalogCache, the cached lookups a chunk affects are invalidated once it has
+ *  committed: the titles of every author of a deleted title and the books of every publisher of one.
+ */
+public class CascadeDeleteService {
+
+    static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final Connection conn;
+    private final int chunkSize;
+    private final CatalogCache cache;
+
+    /**
+     * @param conn the connection the deletes run on
+     * @param chunkSize the number of authors deleted per transaction
+     */
+    public CascadeDeleteService(Connection conn, int chunkSize) {
+        this(conn, chunkSize, null);
+    }
+
+    /**
+     * @param conn the connection the deletes run on
+     * @param chunkSize the number of authors deleted per transaction
+     * @param cache the cache to keep consistent with the deletes, or null if there is none
+     */
+    public CascadeDeleteService(Connection conn, int chunkSize, CatalogCache cache) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1: " + chunkSize);
+        }
+        this.conn = conn;
+        this.chunkSize = chunkSize;
+        this.cache = cache;
+    }
+
+    /**
+     * Delete the given authors and all of their titles.
+     * If a chunk fails, it is rolled back and the exception is rethrown; chunks committed before stay deleted.
+     * @param authorIDs the authors to delete; IDs that do not exist are ignored
+     * @return the number of authors and titles deleted
+     */
+    public DeleteCount deleteAuthors(Collection<Integer> authorIDs) throws SQLException {
+        List<Integer> ids = new ArrayList<>(authorIDs);
+        int authors = 0;
+        int titles = 0;
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            for (int from = 0; from < ids.size(); from += chunkSize) {
+                List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + chunkSize));
+                List<String[]> authorNames = lockAuthors(chunk);
+                List<String> isbns = isbnsOf(chunk);
+                Set<String> publisherNames = new LinkedHashSet<>();
+                if (cache != null) {
+                    // Co-authors of the deleted titles lose them too
+                    authorNames.addAll(query("SELECT DISTINCT a.firstName, a.lastName FROM authorISBN ai"
+                            + " JOIN authors a ON a.authorID = ai.authorID WHERE ai.isbn IN ", isbns, 2));
+                    for (String[] row : query("SELECT DISTINCT p.publisherName FROM titles t"
+                            + " JOIN publishers p ON p.publisherID = t.publisherID WHERE t.isbn IN ", isbns, 1)) {
+                        publisherNames.add(row[0]);
+                    }
+                }
+                titles += deleteIn("DELETE FROM titles WHERE isbn IN ", isbns);
+                authors += deleteIn("DELETE FROM authors WHERE authorID IN ", chunk);
+                conn.commit();
+                if (cache != null) {
+                    for (String[] name : authorNames) {
+                        cache.invalidateAuthor(name[0], name[1]);
+                    }
+                    for (String publisherName : publisherNames) {
+                        cache.invalidatePublisher(publisherName);
+                    }
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return new DeleteCount(authors, titles);
+    }
+
+    /**
+     * Lock the rows of the given authors until the transaction ends, so no title can be linked to them.
+     * @return the first and last name of every author that exists
+     */
+    private List<String[]> lockAuthors(List<Integer> authorIDs) throws SQLException {
+        return query("SELECT firstName, lastName FROM authors WHERE authorID IN ", authorIDs, 2, " FOR UPDATE");
+    }
+
+    /**
+     * Read and lock the authorISBN rows of the given authors.
+     * @return the distinct ISBNs of every title written by any of the given authors
+     */
+    private List<String> isbnsOf(List<Integer> authorIDs) throws SQLException {
+        // Deduplicated here, since a locking read cannot be DISTINCT on every database
+        Set<String> isbns = new LinkedHashSet<>();
+        for (String[] row : query("SELECT isbn FROM authorISBN WHERE authorID IN ", authorIDs, 1, " FOR UPDATE")) {
+            isbns.add(row[0]);
+        }
+        return new ArrayList<>(isbns);
+    }
+
+    private List<String[]> query(String select, List<?> keys, int columns) throws SQLException {
+        return query(select, keys, columns, "");
+    }
+
+    /**
+     * Run 'select' with an IN list of the keys followed by 'suffix'.
+     * @return the first 'columns' columns of every row, as strings
+     */
+    private List<String[]> query(String select, List<?> keys, int columns, String suffix) throws SQLException {
+        List<String[]> rows = new ArrayList<>();
+        if (keys.isEmpty()) {
+            return rows;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(select + placeholders(keys.size()) + suffix)) {
+            bind(ps, keys);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String[] row = new String[columns];
+                    for (int i = 0; i < columns; i++) {
+                        row[i] = rs.getString(i + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private int deleteIn(String delete, List<?> keys) throws SQLException {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(delete + placeholders(keys.size()))) {
+            bind(ps, keys);
+            return ps.executeUpdate();
+        }
+    }
+
+    private static void bind(PreparedStatement ps, List<?> values) throws SQLException {
+        for (int i = 0; i < values.size(); i++) {
+            ps.setObject(i + 1, values.get(i));
+        }
+    }
+
+    /**
+     * @return "(?, ?, ...)" with the given number of parameters
+     */
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * The number of rows removed by a cascading delete.
+     */
+    public record DeleteCount(int authors, int titles) {
+    }
+}
@@ -0,0 +1,197 @@
+// Import SQL package
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * The workloads of the catalog benchmarks, run against a catalog of a given number of titles.
+ *
+ * The benchmarks themselves are JMH benchmarks in jmh/catalog/jmh, built and run by the jmh profile of
+ *  pom.xml (see CatalogBenchmarks there). JMH only accepts benchmark classes in a named package, and a
+ *  class in a named package cannot refer to the classes here in the default package, so the benchmarks
+ *  open a CatalogBenchmark through open() by reflection and reach its workloads through the JDK's
+ *  Function and Callable interfaces: apply(name) returns the workload with that name.
+ *
+ * Workloads:
+ * - schemaSetup: dropping and creating the tables, as JDBC.createTables does
+ * - seed: loading the catalog from CatalogGenerator with BulkLoader into empty tables
+ * - printAuthorsByLastName, printAllPublishers, printTitles, printBooksByPublisher, printAuthorISBNs:
+ *   every catalog query, printed through CatalogPrinter into a stream that discards its output
+ * - streamTitles, streamAuthorISBNs: the full-table listings again through CatalogStreams
+ * - selectAuthorsToDelete: untimed preparation of the delete workloads; picks the next DELETE_SLICE
+ *   authors, the ones with the lowest authorIDs still in the table
+ * - selectLinkedAuthorsToDelete: the same for authors that still have authorISBN rows
+ * - createDeleteAuthorTrigger, createDeleteAuthorISBNTrigger: install the trigger a delete workload measures
+ * - deleteAuthorTrigger: deleting the selected authors, with the DeleteAuthor trigger deleting their titles
+ * - deleteAuthorService: deleting the selected authors with their titles through CascadeDeleteService
+ * - deleteAuthorISBNTrigger: deleting the authorISBN rows of the selected authors, with the
+ *   DeleteAuthorISBN trigger deleting titles left without authors
+ * The authors to delete are read from the table, so the workloads do not depend on how the database
+ *  numbers its rows. Selecting the lowest remaining IDs also means that the range between the lowest
+ *  and highest selected ID holds exactly the selected authors.
+ *
+ * The database is chosen like in JDBC.main (-Ddb.url, -Ddb.user, -Ddb.password); its tables are dropped.
+ * The trigger workloads need MySQL; the others also run on H2 in MySQL mode.
+ */
+public class CatalogBenchmark implements Function<String, Callable<Object>>, AutoCloseable {
+
+    static final long SEED = 157L;
+    // Every delete iteration deletes this fraction of the authors the catalog was seeded with
+    static final double DELETE_FRACTION = 0.01;
+
+    // Output of the print workloads is formatted in full and then thrown away
+    private static final PrintStream BLACKHOLE = new PrintStream(OutputStream.nullOutputStream());
+
+    private final ConnectionPool pool;
+    private final Connection conn;
+    private final Statement stmt;
+    private final CatalogQueries queries;
+    private final CatalogStreams streams;
+    private final CatalogGenerator generator;
+    private final CascadeDeleteService deleteService;
+    private final int deleteSlice;
+    // The authors the next delete workload deletes, ordered by authorID
+    private List<Integer> selected = List.of();
+
+    private CatalogBenchmark(ConnectionPool pool, int titles, boolean seed) throws SQLException {
+        this.pool = pool;
+        this.conn = pool.getConnection();
+        this.stmt = conn.createStatement();
+        this.queries = new CatalogQueries(conn);
+        this.streams = new CatalogStreams(conn, CatalogStreams.DEFAULT_FETCH_SIZE);
+        this.generator = CatalogGenerator.withDefaults(SEED, titles);
+        this.deleteService = new CascadeDeleteService(conn, CascadeDeleteService.DEFAULT_CHUNK_SIZE);
+        this.deleteSlice = Math.max(1, (int) (generator.authorCount() * DELETE_FRACTION));
+        JDBC.createTables(stmt);
+        if (seed) {
+            generator.load(new BulkLoader(conn, BulkLoader.DEFAULT_BATCH_SIZE));
+        }
+    }
+
+    /**
+     * Create the tables, and load a generated catalog into them if 'seed' is set.
+     * @param titles the number of titles of the catalog
+     */
+    public static CatalogBenchmark open(int titles, boolean seed) throws SQLException {
+        ConnectionPool pool = ConnectionPool.fromProperties(System.getProperties());
+        try {
+            return new CatalogBenchmark(pool, titles, seed);
+        } catch (SQLException | RuntimeException e) {
+            pool.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the workload with the given name; calling it runs the workload once
+     */
+    @Override
+    public Callable<Object> apply(String name) {
+        switch (name) {
+            case "schemaSetup":
+                return () -> {
+                    JDBC.createTables(stmt);
+                    return null;
+                };
+            case "seed":
+                return () -> {
+                    generator.load(new BulkLoader(conn, BulkLoader.DEFAULT_BATCH_SIZE));
+                    return null;
+                };
+            case "printAuthorsByLastName":
+                return () -> print(queries.authorsByLastName(), CatalogPrinter::printAuthors);
+            case "printAllPublishers":
+                return () -> print(queries.allPublishers(), CatalogPrinter::printPublishers);
+            case "printTitles":
+                return () -> print(queries.titles(), CatalogPrinter::printTitles);
+            case "printBooksByPublisher":
+                return () -> print(queries.booksByPublisher(generator.publisher(0)[0]), CatalogPrinter::printBooks);
+            case "printAuthorISBNs":
+                return () -> print(queries.authorISBNs(), CatalogPrinter::printAuthorISBNs);
+            // The same two listings read through a server-side cursor instead of a fully buffered result set
+            case "streamTitles":
+                return () -> {
+                    try (Stream<Title> titles = streams.titles()) {
+                        CatalogPrinter.printTitles(BLACKHOLE, titles::iterator);
+                    }
+                    return null;
+                };
+            case "streamAuthorISBNs":
+                return () -> {
+                    try (Stream<AuthorISBN> links = streams.authorISBNs()) {
+                        CatalogPrinter.printAuthorISBNs(BLACKHOLE, links::iterator);
+                    }
+                    return null;
+                };
+            case "selectAuthorsToDelete":
+                return () -> selected = select("SELECT authorID FROM authors ORDER BY authorID LIMIT ?");
+            case "selectLinkedAuthorsToDelete":
+                return () -> selected = select("SELECT DISTINCT authorID FROM authorISBN ORDER BY authorID LIMIT ?");
+            case "createDeleteAuthorTrigger":
+                return () -> stmt.execute(SQL.CREATE_TRIGGER_DELETE_AUTHOR);
+            case "createDeleteAuthorISBNTrigger":
+                return () -> stmt.execute(SQL.CREATE_TRIGGER_DELETE_AUTHOR_ISBN);
+            case "deleteAuthorTrigger":
+                return () -> deleteSelected("DELETE FROM authors WHERE authorID BETWEEN ? AND ?");
+            case "deleteAuthorService":
+                return () -> deleteService.deleteAuthors(selected);
+            case "deleteAuthorISBNTrigger":
+                return () -> deleteSelected("DELETE FROM authorISBN WHERE authorID BETWEEN ? AND ?");
+            default:
+                throw new IllegalArgumentException("Unknown workload: " + name);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            queries.close();
+            stmt.close();
+            conn.close();
+        } finally {
+            pool.close();
+        }
+    }
+
+    private static <T> T print(T rows, Printer<T> printer) {
+        printer.print(BLACKHOLE, rows);
+        return rows;
+    }
+
+    private List<Integer> select(String sql) throws SQLException {
+        List<Integer> ids = new ArrayList<>(deleteSlice);
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, deleteSlice);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Run a delete of the range from the lowest to the highest selected authorID.
+     * @return the number of rows deleted
+     */
+    private int deleteSelected(String sql) throws SQLException {
+        if (selected.isEmpty()) {
+            return 0;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, selected.get(0));
+            ps.setInt(2, selected.get(selected.size() - 1));
+            return ps.executeUpdate();
+        }
+    }
+
+    private interface Printer<T> {
+        void print(PrintStream out, T rows);
+    }
+}
@@ -0,0 +1,91 @@
+// Import SQL package
+import java.sql.*;
+import java.util.List;
+import javax.sql.DataSource;
+
+/**
+ * Read-through caches for the two lookups most of our traffic makes: the books of a publisher
+ *  (by publisher name) and the titles of an author (by first and last name).
+ * On a miss the query runs on a connection borrowed from the DataSource.
+ * CatalogWriter, WriteBehindQueue and CascadeDeleteService invalidate the affected entries whenever they
+ *  change authors, publishers or titles.
+ * Names are compared with CatalogSnapshot.sameName() when invalidating, without case or accents like
+ *  MySQL compares them in queries, so changing "Péarson" also drops the cached books of "pearson".
+ */
+public class CatalogCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 10_000;
+    static final long DEFAULT_TTL_MILLIS = 300_000;
+
+    private final DataSource dataSource;
+    private final LookupCache<String, List<Title>> booksByPublisher;
+    private final LookupCache<AuthorName, List<Title>> titlesByAuthor;
+
+    public CatalogCache(DataSource dataSource) {
+        this(dataSource, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * @param dataSource where connections for cache misses are borrowed
+     * @param maxEntries the number of entries kept by each of the two caches
+     * @param ttlMillis how long a cached result is served after it was loaded
+     */
+    public CatalogCache(DataSource dataSource, int maxEntries, long ttlMillis) {
+        this.dataSource = dataSource;
+        this.booksByPublisher = new LookupCache<>(maxEntries, ttlMillis);
+        this.titlesByAuthor = new LookupCache<>(maxEntries, ttlMillis);
+    }
+
+    /**
+     * @return the publisher's books ordered by title, as returned by CatalogQueries.booksByPublisher()
+     */
+    public List<Title> booksByPublisher(String publisherName) throws SQLException {
+        return booksByPublisher.get(publisherName, name -> {
+            try (Connection conn = dataSource.getConnection();
+                 CatalogQueries queries = new CatalogQueries(conn)) {
+                return List.copyOf(queries.booksByPublisher(name));
+            }
+        });
+    }
+
+    /**
+     * @return the author's titles ordered by title, as returned by CatalogQueries.titlesByAuthor()
+     */
+    public List<Title> titlesByAuthor(String firstName, String lastName) throws SQLException {
+        return titlesByAuthor.get(new AuthorName(firstName, lastName), author -> {
+            try (Connection conn = dataSource.getConnection();
+                 CatalogQueries queries = new CatalogQueries(conn)) {
+                return List.copyOf(queries.titlesByAuthor(author.firstName(), author.lastName()));
+            }
+        });
+    }
+
+    void invalidatePublisher(String publisherName) {
+        booksByPublisher.invalidateIf(name -> CatalogSnapshot.sameName(name, publisherName));
+    }
+
+    void invalidateAuthor(String firstName, String lastName) {
+        titlesByAuthor.invalidateIf(author -> CatalogSnapshot.sameName(author.firstName(), firstName)
+                && CatalogSnapshot.sameName(author.lastName(), lastName));
+    }
+
+    void invalidateAuthorsNamed(String firstName) {
+        titlesByAuthor.invalidateIf(author -> CatalogSnapshot.sameName(author.firstName(), firstName));
+    }
+
+    void invalidateAll() {
+        booksByPublisher.invalidateAll();
+        titlesByAuthor.invalidateAll();
+    }
+
+    /**
+     * Print the hit, miss and eviction counters of both caches.
+     */
+    public void printStats() {
+        System.out.println("Books by publisher cache: " + booksByPublisher);
+        System.out.println("Titles by author cache:   " + titlesByAuthor);
+    }
+
+    private record AuthorName(String firstName, String lastName) {
+    }
+}
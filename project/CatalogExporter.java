@@ -0,0 +1,239 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Exports tables to CSV or to a compact binary columnar file, reading them through CatalogStreams,
+ *  so memory use stays the same however large the table is.
+ *
+ * The columnar file is laid out as follows (all numbers big-endian, as written by DataOutputStream):
+ *   magic "CATC", format version (int), column count (int),
+ *   for every column: name (UTF), type (byte: 1 = int, 2 = decimal, 3 = string, 4 = smallint),
+ *   nullable (byte: 1 if the column may hold nulls), and for decimals the scale (byte),
+ *   then row groups of up to ROW_GROUP_SIZE rows: row count (int) followed by each column in turn.
+ *   A nullable column starts with one byte per row, 1 for null; null rows then hold 0 or an empty string.
+ *   Ints are 4-byte values, smallints 2-byte values, decimals their unscaled value at the column's scale
+ *   as a 4-byte int, and strings one length (int) per row followed by the UTF-8 bytes of all rows.
+ *   A row count of 0 ends the file.
+ * Storing each column contiguously within a row group keeps values of one type together, which is
+ *  smaller and faster to scan than rows of mixed text, and only one row group is ever held in memory.
+ */
+public class CatalogExporter {
+
+    static final int ROW_GROUP_SIZE = 65_536;
+    static final int COLUMNAR_VERSION = 2;
+    static final byte INT = 1;
+    static final byte DECIMAL = 2;
+    static final byte STRING = 3;
+    static final byte SMALLINT = 4;
+
+    /**
+     * The columns of the 'titles' table.
+     */
+    static final List<Column<Title>> TITLE_COLUMNS = List.of(
+            new Column<>("isbn", STRING, Title::isbn),
+            new Column<>("title", STRING, Title::title),
+            new Column<>("editionNumber", INT, Title::editionNumber),
+            new Column<>("Year", SMALLINT, true, 0, Title::year),
+            new Column<>("publisherID", INT, Title::publisherID),
+            new Column<>("price", DECIMAL, false, 2, Title::price));
+
+    /**
+     * The columns of the 'authorISBN' table.
+     */
+    static final List<Column<AuthorISBN>> AUTHOR_ISBN_COLUMNS = List.of(
+            new Column<>("authorID", INT, AuthorISBN::authorID),
+            new Column<>("isbn", STRING, AuthorISBN::isbn));
+
+    /**
+     * Write the rows as CSV with a header line. Fields containing a comma, quote or line break are quoted,
+     *  and null values are written as empty fields.
+     * @return the number of rows written
+     */
+    static <T> long exportCsv(Stream<T> rows, List<Column<T>> columns, Path file) throws IOException {
+        long count = 0;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            for (int c = 0; c < columns.size(); c++) {
+                out.write(c == 0 ? "" : ",");
+                out.write(columns.get(c).name);
+            }
+            out.write('\n');
+            Iterator<T> it = rows.iterator();
+            while (it.hasNext()) {
+                T row = it.next();
+                for (int c = 0; c < columns.size(); c++) {
+                    if (c > 0) {
+                        out.write(',');
+                    }
+                    Object value = columns.get(c).value.apply(row);
+                    if (value instanceof BigDecimal) {
+                        out.write(((BigDecimal) value).toPlainString());
+                    } else if (value != null) {
+                        out.write(csvField(value.toString()));
+                    }
+                }
+                out.write('\n');
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write the rows in the columnar format described above.
+     * @return the number of rows written
+     */
+    static <T> long exportColumnar(Stream<T> rows, List<Column<T>> columns, Path file) throws IOException {
+        long count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeBytes("CATC");
+            out.writeInt(COLUMNAR_VERSION);
+            out.writeInt(columns.size());
+            for (Column<T> column : columns) {
+                out.writeUTF(column.name);
+                out.writeByte(column.type);
+                out.writeBoolean(column.nullable);
+                if (column.type == DECIMAL) {
+                    out.writeByte(column.scale);
+                }
+            }
+            List<T> group = new ArrayList<>(ROW_GROUP_SIZE);
+            Iterator<T> it = rows.iterator();
+            while (it.hasNext()) {
+                group.add(it.next());
+                if (group.size() == ROW_GROUP_SIZE || !it.hasNext()) {
+                    writeRowGroup(out, columns, group);
+                    count += group.size();
+                    group.clear();
+                }
+            }
+            out.writeInt(0);
+        }
+        return count;
+    }
+
+    private static <T> void writeRowGroup(DataOutputStream out, List<Column<T>> columns, List<T> group) throws IOException {
+        out.writeInt(group.size());
+        for (Column<T> column : columns) {
+            if (column.nullable) {
+                for (T row : group) {
+                    out.writeBoolean(column.value.apply(row) == null);
+                }
+            }
+            switch (column.type) {
+                case INT:
+                    for (T row : group) {
+                        Number value = (Number) column.value.apply(row);
+                        out.writeInt(value == null ? 0 : value.intValue());
+                    }
+                    break;
+                case SMALLINT:
+                    for (T row : group) {
+                        Number value = (Number) column.value.apply(row);
+                        out.writeShort(value == null ? 0 : value.shortValue());
+                    }
+                    break;
+                case DECIMAL:
+                    for (T row : group) {
+                        BigDecimal value = (BigDecimal) column.value.apply(row);
+                        // Throws if the value has more decimal places than the column or does not fit an int
+                        out.writeInt(value == null ? 0 : value.setScale(column.scale).unscaledValue().intValueExact());
+                    }
+                    break;
+                default:
+                    byte[][] values = new byte[group.size()][];
+                    for (int i = 0; i < values.length; i++) {
+                        Object value = column.value.apply(group.get(i));
+                        values[i] = value == null ? new byte[0] : value.toString().getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(values[i].length);
+                    }
+                    for (byte[] value : values) {
+                        out.write(value);
+                    }
+            }
+        }
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Usage: java CatalogExporter <titles|authorISBN> <csv|columnar> <file> [fetchSize]
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: java CatalogExporter <titles|authorISBN> <csv|columnar> <file> [fetchSize]");
+            return;
+        }
+        String table = args[0];
+        boolean csv = args[1].equals("csv");
+        Path file = Paths.get(args[2]);
+        int fetchSize = args.length > 3 ? Integer.parseInt(args[3]) : CatalogStreams.DEFAULT_FETCH_SIZE;
+        long start = System.nanoTime();
+        long rows;
+        try (ConnectionPool pool = ConnectionPool.fromProperties(System.getProperties());
+             Connection conn = pool.getConnection()) {
+            CatalogStreams streams = new CatalogStreams(conn, fetchSize);
+            if (table.equals("titles")) {
+                try (Stream<Title> titles = streams.titles()) {
+                    rows = csv ? exportCsv(titles, TITLE_COLUMNS, file) : exportColumnar(titles, TITLE_COLUMNS, file);
+                }
+            } else if (table.equals("authorISBN")) {
+                try (Stream<AuthorISBN> links = streams.authorISBNs()) {
+                    rows = csv ? exportCsv(links, AUTHOR_ISBN_COLUMNS, file) : exportColumnar(links, AUTHOR_ISBN_COLUMNS, file);
+                }
+            } else {
+                System.out.println("Unknown table: " + table);
+                return;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Exported %d rows of %s to %s in %.3f seconds (%.0f rows/sec)\n",
+                rows, table, file, seconds, seconds > 0 ? rows / seconds : 0);
+    }
+
+    /**
+     * One exported column: its name, its type in the columnar format, whether it may hold nulls,
+     *  the scale of a decimal column and how to get its value from a record.
+     */
+    static final class Column<T> {
+        final String name;
+        final byte type;
+        final boolean nullable;
+        final int scale;
+        final Function<T, Object> value;
+
+        Column(String name, byte type, Function<T, Object> value) {
+            this(name, type, false, 0, value);
+        }
+
+        Column(String name, byte type, boolean nullable, int scale, Function<T, Object> value) {
+            this.name = name;
+            this.type = type;
+            this.nullable = nullable;
+            this.scale = scale;
+            this.value = value;
+        }
+    }
+}
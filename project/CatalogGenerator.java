@@ -0,0 +1,445 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * Generates a synthetic catalog of any size for scale testing.
+ *
+ * Every row is computed from the seed and its own index, so the same seed always gives the same
+ *  catalog, rows can be produced in any order or in parallel, and nothing has to be kept in memory.
+ * The rows have the same fields as the seed data in SQL.java, so they can be passed straight to a
+ *  BulkLoader or written to TSV files for the CatalogImporter.
+ *
+ * - Author and publisher names and book titles are unique.
+ * - ISBNs are valid ISBN-13 numbers with a 978 prefix and a correct check digit.
+ * - Publishers are picked with Zipfian popularity: publisher k is chosen with probability
+ *   proportional to 1 / k^publisherSkew, so a skew of 0 is uniform and larger values concentrate
+ *   titles on a few publishers. Authors can be skewed the same way with authorSkew.
+ * - Each title has one author, plus with probability 'coAuthorRate' another one, repeated up to
+ *   'maxAuthorsPerTitle' authors.
+ */
+public class CatalogGenerator {
+
+    // Rows per chunk when files are written in parallel
+    static final int CHUNK_ROWS = 50_000;
+
+    private static final String[] FIRST_NAMES = {
+            "James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael", "Linda", "William", "Susan",
+            "David", "Karen", "Harper", "Aldous", "Ayn", "Vladimir", "Arthur", "Scott", "Christopher", "Ron"
+    };
+    private static final String[] LAST_NAMES = {
+            "King", "Rowling", "McBride", "Mari", "Patterson", "Joyce", "Fitzgerald", "Nabokov", "Faulkner",
+            "Huxley", "Koestler", "Rand", "Hubbard", "Tolkein", "Lee", "Smith", "Garcia", "Nguyen", "Brown"
+    };
+    private static final String[] PUBLISHER_WORDS = {
+            "Signet", "Pearson", "Penguin", "Wiley", "Scholastic", "Modern", "Crown", "Harper", "Allworth",
+            "Nature", "Warner", "Random", "Martin's", "Group", "German"
+    };
+    private static final String[] TITLE_ADJECTIVES = {
+            "Brave", "Great", "Running", "Silent", "Lost", "Hidden", "Last", "Dark", "Golden", "Broken"
+    };
+    private static final String[] TITLE_NOUNS = {
+            "World", "Gatsby", "Man", "Earth", "Ring", "Noon", "Fury", "Mockingbird", "Penguin", "Dune"
+    };
+
+    // Different salts keep the random streams of the tables independent of each other
+    private static final long AUTHOR_SALT = 0x5DEECE66DL;
+    private static final long PUBLISHER_SALT = 0x9E3779B97F4A7C15L;
+    private static final long TITLE_SALT = 0xC2B2AE3D27D4EB4FL;
+    private static final long AUTHOR_ISBN_SALT = 0x165667B19E3779F9L;
+
+    private final long seed;
+    private final int authors;
+    private final int publishers;
+    private final int titles;
+    private final double coAuthorRate;
+    private final int maxAuthorsPerTitle;
+    private final ZipfSampler publisherSampler;
+    private final ZipfSampler authorSampler;
+
+    /**
+     * @param seed the seed every row is derived from
+     * @param authors the number of authors
+     * @param publishers the number of publishers
+     * @param titles the number of titles
+     * @param publisherSkew the Zipf exponent of publisher popularity; 0 for uniform
+     * @param authorSkew the Zipf exponent of author popularity; 0 for uniform
+     * @param coAuthorRate the probability that a title gets one more author
+     * @param maxAuthorsPerTitle the largest number of authors a title can have
+     */
+    public CatalogGenerator(long seed, int authors, int publishers, int titles, double publisherSkew,
+                            double authorSkew, double coAuthorRate, int maxAuthorsPerTitle) {
+        if (authors < 1 || publishers < 1 || titles < 0 || maxAuthorsPerTitle < 1) {
+            throw new IllegalArgumentException("A catalog needs at least one author and one publisher");
+        }
+        // The title index becomes the 9 digits between the 978 prefix and the check digit of the ISBN
+        if (titles > 1_000_000_000) {
+            throw new IllegalArgumentException("At most 1,000,000,000 titles can be generated: " + titles);
+        }
+        this.seed = seed;
+        this.authors = authors;
+        this.publishers = publishers;
+        this.titles = titles;
+        this.coAuthorRate = coAuthorRate;
+        this.maxAuthorsPerTitle = Math.min(maxAuthorsPerTitle, authors);
+        this.publisherSampler = new ZipfSampler(publishers, publisherSkew);
+        this.authorSampler = new ZipfSampler(authors, authorSkew);
+    }
+
+    /**
+     * A catalog with the given number of titles, half as many authors, one publisher per hundred titles,
+     *  Zipfian publisher popularity with exponent 1 and up to four authors per title.
+     */
+    public static CatalogGenerator withDefaults(long seed, int titles) {
+        return new CatalogGenerator(seed, Math.max(1, titles / 2), Math.max(1, titles / 100), titles,
+                1.0, 0.0, 0.3, 4);
+    }
+
+    public int authorCount() {
+        return authors;
+    }
+
+    public int publisherCount() {
+        return publishers;
+    }
+
+    public int titleCount() {
+        return titles;
+    }
+
+    /**
+     * @return the author with the given index as { firstName, lastName }
+     */
+    public String[] author(int index) {
+        SplittableRandom random = random(AUTHOR_SALT, index);
+        // The index in the last name keeps every author's name unique
+        return new String[] {
+                pick(random, FIRST_NAMES),
+                pick(random, LAST_NAMES) + index
+        };
+    }
+
+    /**
+     * @return the publisher with the given index as { publisherName }
+     */
+    public String[] publisher(int index) {
+        SplittableRandom random = random(PUBLISHER_SALT, index);
+        return new String[] {pick(random, PUBLISHER_WORDS) + " Press " + index};
+    }
+
+    /**
+     * @return the title with the given index as { isbn, editionNumber, Year, publisherName, price, title }
+     */
+    public String[] title(int index) {
+        return title(index, publisher -> publisher(publisher)[0]);
+    }
+
+    /**
+     * @param publisherField the value of the publisher field for the publisher with a given index
+     */
+    private String[] title(int index, IntFunction<String> publisherField) {
+        SplittableRandom random = random(TITLE_SALT, index);
+        // Most books are first editions
+        int edition = random.nextInt(10) < 7 ? 1 : 2 + random.nextInt(4);
+        int year = 1900 + random.nextInt(126);
+        int cents = 499 + random.nextInt(7500);
+        String name = pick(random, TITLE_ADJECTIVES) + " " + pick(random, TITLE_NOUNS) + " " + index;
+        return new String[] {
+                isbn(index),
+                String.valueOf(edition),
+                String.valueOf(year),
+                publisherField.apply(publisherSampler.sample(random)),
+                (cents / 100) + "." + (cents % 100 < 10 ? "0" : "") + (cents % 100),
+                name
+        };
+    }
+
+    /**
+     * @return the authors of the title with the given index as { firstName, lastName, title } rows
+     */
+    public String[][] authorISBNs(int titleIndex) {
+        int[] chosen = authorsOf(titleIndex);
+        String title = title(titleIndex)[5];
+        String[][] rows = new String[chosen.length][];
+        for (int i = 0; i < chosen.length; i++) {
+            String[] name = author(chosen[i]);
+            rows[i] = new String[] {name[0], name[1], title};
+        }
+        return rows;
+    }
+
+    /**
+     * @return the indexes of the authors of the title with the given index
+     */
+    private int[] authorsOf(int titleIndex) {
+        SplittableRandom random = random(AUTHOR_ISBN_SALT, titleIndex);
+        int count = 1;
+        while (count < maxAuthorsPerTitle && random.nextDouble() < coAuthorRate) {
+            count++;
+        }
+        int[] chosen = new int[count];
+        for (int i = 0; i < count; i++) {
+            int author;
+            do {
+                author = authorSampler.sample(random);
+            } while (contains(chosen, i, author));
+            chosen[i] = author;
+        }
+        return chosen;
+    }
+
+    public Iterable<String[]> authors() {
+        return () -> new RowIterator(authors, this::authorRows);
+    }
+
+    public Iterable<String[]> publishers() {
+        return () -> new RowIterator(publishers, this::publisherRows);
+    }
+
+    public Iterable<String[]> titles() {
+        return () -> new RowIterator(titles, this::titleRows);
+    }
+
+    public Iterable<String[]> authorISBNs() {
+        return () -> new RowIterator(titles, this::authorISBNs);
+    }
+
+    /**
+     * Load the whole catalog through the given loader, generating rows as they are inserted.
+     * Titles and their authors are loaded by key: only the generated authorID and publisherID of every
+     *  index are kept, one int each, and no names, titles or ISBNs are held in memory.
+     */
+    public void load(BulkLoader loader) throws SQLException {
+        int[] authorIds = new int[authors];
+        int[] publisherIds = new int[publishers];
+        // The loader hands back the generated keys in the order of the rows, which is the order of the indexes
+        int[] next = new int[1];
+        loader.loadAuthors(authors(), (row, generatedKey) -> authorIds[next[0]++] = generatedKey);
+        next[0] = 0;
+        loader.loadPublishers(publishers(), (row, generatedKey) -> publisherIds[next[0]++] = generatedKey);
+        loader.loadTitlesByKey(() -> new RowIterator(titles,
+                index -> new String[][] {title(index, publisher -> String.valueOf(publisherIds[publisher]))}));
+        loader.loadAuthorISBNsByKey(() -> new RowIterator(titles, index -> {
+            int[] chosen = authorsOf(index);
+            String[][] rows = new String[chosen.length][];
+            for (int i = 0; i < chosen.length; i++) {
+                rows[i] = new String[] {String.valueOf(authorIds[chosen[i]]), isbn(index)};
+            }
+            return rows;
+        }));
+    }
+
+    /**
+     * Write the catalog as authors.tsv, publishers.tsv, titles.tsv and authorISBN.tsv in the given directory.
+     * Chunks of rows are generated on 'threads' threads and written in order, so the files are the same
+     *  for any number of threads and at most a few chunks per thread are held in memory.
+     */
+    public void writeFiles(Path dir, int threads) throws IOException, InterruptedException {
+        Files.createDirectories(dir);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            writeFile(dir.resolve("authors.tsv"), authors, this::authorRows, executor, threads);
+            writeFile(dir.resolve("publishers.tsv"), publishers, this::publisherRows, executor, threads);
+            writeFile(dir.resolve("titles.tsv"), titles, this::titleRows, executor, threads);
+            writeFile(dir.resolve("authorISBN.tsv"), titles, this::authorISBNs, executor, threads);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void writeFile(Path file, int count, IntFunction<String[][]> rows, ExecutorService executor, int threads)
+            throws IOException, InterruptedException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            Deque<Future<byte[]>> pending = new ArrayDeque<>();
+            int next = 0;
+            while (next < count || !pending.isEmpty()) {
+                // Keep two chunks per thread in flight so the threads stay busy while chunks are written
+                while (next < count && pending.size() < threads * 2) {
+                    int from = next;
+                    int to = (int) Math.min(count, (long) from + CHUNK_ROWS);
+                    pending.addLast(executor.submit(() -> formatChunk(rows, from, to)));
+                    next = to;
+                }
+                try {
+                    out.write(pending.removeFirst().get());
+                } catch (ExecutionException e) {
+                    throw new IOException("Generating " + file + " failed", e.getCause());
+                }
+            }
+        }
+    }
+
+    private static byte[] formatChunk(IntFunction<String[][]> rows, int from, int to) {
+        StringBuilder chunk = new StringBuilder((to - from) * 64);
+        for (int i = from; i < to; i++) {
+            for (String[] row : rows.apply(i)) {
+                chunk.append(String.join("\t", row)).append('\n');
+            }
+        }
+        return chunk.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String[][] authorRows(int index) {
+        return new String[][] {author(index)};
+    }
+
+    private String[][] publisherRows(int index) {
+        return new String[][] {publisher(index)};
+    }
+
+    private String[][] titleRows(int index) {
+        return new String[][] {title(index)};
+    }
+
+    private static String isbn(int titleIndex) {
+        return isbn13(978_000_000_000L + titleIndex);
+    }
+
+    /**
+     * @param prefix the first 12 digits of the ISBN
+     * @return the 13-digit ISBN made of the prefix and its check digit
+     */
+    static String isbn13(long prefix) {
+        String digits = String.format("%012d", prefix);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = digits.charAt(i) - '0';
+            sum += i % 2 == 0 ? digit : digit * 3;
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    /**
+     * @return a random stream for one row, independent of the streams of all other rows and tables
+     */
+    private SplittableRandom random(long salt, int index) {
+        return new SplittableRandom(mix64(mix64(seed ^ salt) + index));
+    }
+
+    /**
+     * The 64-bit finalizer of SplitMix64: spreads nearby inputs to unrelated outputs.
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static String pick(SplittableRandom random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Usage: java CatalogGenerator <directory> <titles> [threads] [seed]
+     * Writes a catalog created with withDefaults() as TSV files that CatalogImporter can load.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java CatalogGenerator <directory> <titles> [threads] [seed]");
+            return;
+        }
+        Path dir = Paths.get(args[0]);
+        int titles = Integer.parseInt(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 157L;
+        long start = System.nanoTime();
+        try {
+            withDefaults(seed, titles).writeFiles(dir, threads);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        System.out.printf("Generated %d titles in %.3f seconds\n", titles, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Draws values 0..n-1 where value k has probability proportional to 1 / (k + 1)^exponent.
+     * Uses a cumulative distribution table, so skewed samplers cost one double per value.
+     */
+    private static final class ZipfSampler {
+        private final int n;
+        private final double[] cumulative;
+
+        ZipfSampler(int n, double exponent) {
+            this.n = n;
+            if (exponent == 0) {
+                // Uniform; no table needed
+                this.cumulative = null;
+                return;
+            }
+            this.cumulative = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += 1 / Math.pow(k + 1, exponent);
+                cumulative[k] = sum;
+            }
+            for (int k = 0; k < n; k++) {
+                cumulative[k] /= sum;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            if (cumulative == null) {
+                return random.nextInt(n);
+            }
+            int k = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(n - 1, k >= 0 ? k : -k - 1);
+        }
+    }
+
+    /**
+     * Iterates the rows produced for indexes 0..count-1, flattening indexes that produce several rows.
+     */
+    private static final class RowIterator implements Iterator<String[]> {
+        private final int count;
+        private final IntFunction<String[][]> rows;
+        private int index;
+        private String[][] current = new String[0][];
+        private int position;
+
+        RowIterator(int count, IntFunction<String[][]> rows) {
+            this.count = count;
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (position == current.length && index < count) {
+                current = rows.apply(index++);
+                position = 0;
+            }
+            return position < current.length;
+        }
+
+        @Override
+        public String[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current[position++];
+        }
+    }
+}
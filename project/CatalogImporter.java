@@ -0,0 +1,379 @@
+// Import SQL package
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sql.DataSource;
+
+/**
+ * Streams large catalog files from disk into the database.
+ *
+ * Each table is imported from its own CSV or TSV file. One thread reads and parses the file and
+ *  hands fixed-size batches to the writer threads through a bounded queue; when the writers fall
+ *  behind, the reader blocks, so the parsed rows held in memory depend on the queue capacity and
+ *  batch size rather than on the size of the file. Every writer borrows its own connection and has
+ *  its own BulkLoader. The writers share one CatalogKeys, though, which keeps the name and key of
+ *  every author, publisher and title loaded so far, so that part of the memory does grow with the files.
+ *
+ * Every committed batch is recorded in the 'importCheckpoint' table inside the batch's own
+ *  transaction, under an import ID made from the file's path, size and modification time and the
+ *  batch size, since batch numbers only identify the same rows when the batches are as large. Running
+ *  the import of the same files again after a crash skips the recorded batches and loads only the
+ *  rest; a different file, such as the next day's export to the same path, gets a new ID and is
+ *  loaded in full. The checkpoints of an import are deleted once all of its tables have been loaded.
+ * Tables are imported in dependency order (authors, publishers, titles, authorISBN) because the
+ *  rows of later tables reference the keys of earlier ones.
+ *
+ * File rows have the same fields as the seed data in SQL.java. Blank lines and lines starting
+ *  with '#' are ignored. CSV fields may be quoted with double quotes; TSV fields are not quoted.
+ */
+public class CatalogImporter {
+
+    static final int DEFAULT_WRITERS = 4;
+    static final int DEFAULT_QUEUE_CAPACITY = 16;
+    // Large read buffer so the reader does few system calls on big files
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private final DataSource dataSource;
+    private final int writers;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final CatalogKeys keys = new CatalogKeys();
+
+    /**
+     * @param dataSource where the reader and every writer get their connections; it must be able to
+     *                   provide one connection per writer at the same time
+     * @param writers the number of writer threads, each with its own connection
+     * @param batchSize the number of rows per batch and transaction
+     * @param queueCapacity the number of parsed batches that may wait for a writer
+     */
+    public CatalogImporter(DataSource dataSource, int writers, int batchSize, int queueCapacity) {
+        if (writers < 1 || batchSize < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("writers, batchSize and queueCapacity must be at least 1");
+        }
+        this.dataSource = dataSource;
+        this.writers = writers;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Import the given files; a null path skips that table.
+     */
+    public void importCatalog(Path authors, Path publishers, Path titles, Path authorISBNs)
+            throws SQLException, IOException, InterruptedException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(SQL.CREATE_IMPORT_CHECKPOINT_TABLE);
+            // Rows committed by an earlier run may be referenced by the rows still to be imported
+            keys.loadExisting(conn);
+        }
+        Map<String, String> importIds = new LinkedHashMap<>();
+        System.out.printf("%-12s| %-10s| %-8s| %-8s| %-10s| %-10s\n", "table", "rows", "batches", "skipped", "seconds", "rows/sec");
+        System.out.println("-----------------------------------------------------------------------");
+        if (authors != null) {
+            importTable("authors", authors, importIds);
+        }
+        if (publishers != null) {
+            importTable("publishers", publishers, importIds);
+        }
+        if (titles != null) {
+            importTable("titles", titles, importIds);
+        }
+        if (authorISBNs != null) {
+            importTable("authorISBN", authorISBNs, importIds);
+        }
+        // Only now, since a crash in a later table must not make an earlier one load again
+        deleteCheckpoints(importIds);
+        System.out.println();
+    }
+
+    /**
+     * Parse one file on the calling thread and write its batches on the writer threads.
+     * @param importIds receives the import ID of the table's file
+     */
+    private void importTable(String table, Path file, Map<String, String> importIds)
+            throws SQLException, IOException, InterruptedException {
+        String importId = importId(file, batchSize);
+        importIds.put(table, importId);
+        Set<Long> committed = committedBatches(importId, table);
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicLong rows = new AtomicLong();
+        long start = System.nanoTime();
+
+        List<Thread> threads = new ArrayList<>(writers);
+        for (int i = 0; i < writers; i++) {
+            Thread writer = new Thread(() -> write(importId, table, queue, failure, rows), "import-" + table + "-" + i);
+            writer.start();
+            threads.add(writer);
+        }
+
+        long batchNumber = 0;
+        long batches = 0;
+        long skipped = 0;
+        char delimiter = file.toString().endsWith(".tsv") ? '\t' : ',';
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), READ_BUFFER_SIZE)) {
+            List<String[]> pending = new ArrayList<>(batchSize);
+            String line;
+            while (failure.get() == null) {
+                line = reader.readLine();
+                if (line != null) {
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    pending.add(parseLine(line, delimiter));
+                    if (pending.size() < batchSize) {
+                        continue;
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    // Batches are numbered by their position in the file, so the numbers are the same on every run
+                    if (committed.contains(batchNumber)) {
+                        skipped++;
+                    } else if (put(queue, new Batch(batchNumber, pending), failure)) {
+                        batches++;
+                    } else {
+                        // A writer has failed; the failure is thrown below
+                        break;
+                    }
+                    batchNumber++;
+                    pending = new ArrayList<>(batchSize);
+                }
+                if (line == null) {
+                    break;
+                }
+            }
+        } finally {
+            // One end marker per writer
+            for (int i = 0; i < writers; i++) {
+                put(queue, Batch.END, null);
+            }
+            for (Thread writer : threads) {
+                writer.join();
+            }
+        }
+
+        Exception e = failure.get();
+        if (e instanceof SQLException) {
+            throw (SQLException) e;
+        } else if (e != null) {
+            throw new SQLException("Import of " + table + " failed", e);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double rate = seconds > 0 ? rows.get() / seconds : 0;
+        System.out.printf("%-12s| %-10d| %-8d| %-8d| %-10.3f| %-10.0f\n", table, rows.get(), batches, skipped, seconds, rate);
+    }
+
+    /**
+     * Writer thread body: take batches from the queue until the end marker and load each one
+     *  in its own transaction together with its checkpoint row.
+     */
+    private void write(String importId, String table, BlockingQueue<Batch> queue, AtomicReference<Exception> failure,
+                       AtomicLong rows) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement checkpoint = conn.prepareStatement(SQL.INSERT_IMPORT_CHECKPOINT)) {
+            BulkLoader loader = new BulkLoader(conn, batchSize, keys);
+            long[] current = new long[1];
+            loader.setCommitHook((loadedTable, count) -> {
+                checkpoint.setString(1, importId);
+                checkpoint.setString(2, table);
+                checkpoint.setLong(3, current[0]);
+                checkpoint.executeUpdate();
+            });
+            Batch batch;
+            while ((batch = queue.take()) != Batch.END) {
+                // Once any writer has failed, the rest only drain the queue
+                if (failure.get() != null) {
+                    continue;
+                }
+                current[0] = batch.number;
+                rows.addAndGet(load(loader, table, batch.rows));
+            }
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+            // Keep taking batches so the reader is never blocked on a full queue
+            try {
+                while (queue.take() != Batch.END) {
+                    // discard
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static long load(BulkLoader loader, String table, List<String[]> rows) throws SQLException {
+        switch (table) {
+            case "authors":
+                return loader.loadAuthors(rows);
+            case "publishers":
+                return loader.loadPublishers(rows);
+            case "titles":
+                return loader.loadTitles(rows);
+            case "authorISBN":
+                return loader.loadAuthorISBNs(rows);
+            default:
+                throw new IllegalArgumentException("Unknown table: " + table);
+        }
+    }
+
+    /**
+     * Put a batch on the queue, waiting while it is full but giving up once a writer has failed.
+     * @return false if the batch was not queued because a writer has failed
+     */
+    private static boolean put(BlockingQueue<Batch> queue, Batch batch, AtomicReference<Exception> failure)
+            throws InterruptedException {
+        while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            if (failure != null && failure.get() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return an ID that is the same for every import of an unchanged file in batches of the same size,
+     *  and differs for any other file or batch size
+     */
+    static String importId(Path file, int batchSize) throws IOException {
+        String identity = file.toAbsolutePath().normalize() + "\n" + Files.size(file) + "\n"
+                + Files.getLastModifiedTime(file).toMillis() + "\n" + batchSize;
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(identity.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Set<Long> committedBatches(String importId, String table) throws SQLException {
+        Set<Long> committed = new HashSet<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(SQL.SELECT_IMPORT_CHECKPOINTS)) {
+            ps.setString(1, importId);
+            ps.setString(2, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    committed.add(rs.getLong("batchNumber"));
+                }
+            }
+        }
+        return committed;
+    }
+
+    /**
+     * Delete the checkpoints of a completed import, so a later import of a file with the same ID loads it again.
+     * @param importIds the import ID of each imported table
+     */
+    private void deleteCheckpoints(Map<String, String> importIds) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(SQL.DELETE_IMPORT_CHECKPOINTS)) {
+            for (Map.Entry<String, String> entry : importIds.entrySet()) {
+                ps.setString(1, entry.getValue());
+                ps.setString(2, entry.getKey());
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Split one line into fields. With ',' as the delimiter, fields may be enclosed in double quotes,
+     *  and a doubled quote inside a quoted field stands for one quote character.
+     */
+    static String[] parseLine(String line, char delimiter) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && delimiter == ',' && field.length() == 0) {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Usage: java CatalogImporter <directory> [writers] [batchSize]
+     * The directory holds authors, publishers, titles and authorISBN files with a .tsv or .csv extension.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java CatalogImporter <directory> [writers] [batchSize]");
+            return;
+        }
+        Path dir = Paths.get(args[0]);
+        int writers = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_WRITERS;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : BulkLoader.DEFAULT_BATCH_SIZE;
+        Properties props = new Properties(System.getProperties());
+        props.setProperty("pool.maxSize", String.valueOf(writers));
+        try (ConnectionPool pool = ConnectionPool.fromProperties(props)) {
+            CatalogImporter importer = new CatalogImporter(pool, writers, batchSize, DEFAULT_QUEUE_CAPACITY);
+            importer.importCatalog(find(dir, "authors"), find(dir, "publishers"),
+                    find(dir, "titles"), find(dir, "authorISBN"));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        System.out.println("Done.");
+    }
+
+    private static Path find(Path dir, String table) {
+        for (String extension : new String[] {".tsv", ".csv"}) {
+            Path file = dir.resolve(table + extension);
+            if (Files.exists(file)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private static final class Batch {
+        // Marks the end of the file; each writer stops when it takes one
+        static final Batch END = new Batch(-1, null);
+
+        final long number;
+        final List<String[]> rows;
+
+        Batch(long number, List<String[]> rows) {
+            this.number = number;
+            this.rows = rows;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+// Import SQL package
+import java.sql.*;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keys of the catalog rows that have been loaded, used to resolve the references of later rows
+ *  on the client instead of with a sub-SELECT per row.
+ * Authors are keyed by first and last name, publishers by name, and titles (mapped to their isbn) by title.
+ * None of these names is unique in the schema, so a name recorded with two different keys is remembered
+ *  as ambiguous and resolving it throws, instead of silently referencing whichever row was recorded last.
+ * The maps are thread safe so several loaders writing on different connections can share one instance.
+ */
+public class CatalogKeys {
+
+    private final Map<String, Integer> authorIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> publisherIds = new ConcurrentHashMap<>();
+    private final Map<String, String> titleIsbns = new ConcurrentHashMap<>();
+    // Names recorded with more than one key, which cannot be resolved
+    private final Set<String> ambiguousAuthors = ConcurrentHashMap.newKeySet();
+    private final Set<String> ambiguousPublishers = ConcurrentHashMap.newKeySet();
+    private final Set<String> ambiguousTitles = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Read the keys of every row already in the 'authors', 'publishers' and 'titles' tables,
+     *  so that a load can continue on top of data committed by an earlier run.
+     * @param conn the connection to read the keys through
+     */
+    public void loadExisting(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT authorID, firstName, lastName FROM authors")) {
+                while (rs.next()) {
+                    putAuthor(rs.getString("firstName"), rs.getString("lastName"), rs.getInt("authorID"));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT publisherID, publisherName FROM publishers")) {
+                while (rs.next()) {
+                    putPublisher(rs.getString("publisherName"), rs.getInt("publisherID"));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT isbn, title FROM titles")) {
+                while (rs.next()) {
+                    putTitle(rs.getString("title"), rs.getString("isbn"));
+                }
+            }
+        }
+    }
+
+    void putAuthor(String firstName, String lastName, int authorID) {
+        put(authorIds, ambiguousAuthors, authorKey(firstName, lastName), authorID);
+    }
+
+    void putPublisher(String publisherName, int publisherID) {
+        put(publisherIds, ambiguousPublishers, publisherName, publisherID);
+    }
+
+    void putTitle(String title, String isbn) {
+        put(titleIsbns, ambiguousTitles, title, isbn);
+    }
+
+    int authorID(String firstName, String lastName) throws SQLException {
+        return resolve(authorIds, ambiguousAuthors, authorKey(firstName, lastName), "author");
+    }
+
+    int publisherID(String publisherName) throws SQLException {
+        return resolve(publisherIds, ambiguousPublishers, publisherName, "publisher");
+    }
+
+    String isbn(String title) throws SQLException {
+        return resolve(titleIsbns, ambiguousTitles, title, "title");
+    }
+
+    private static String authorKey(String firstName, String lastName) {
+        return firstName + '\t' + lastName;
+    }
+
+    private static <V> void put(Map<String, V> keys, Set<String> ambiguous, String name, V key) {
+        V previous = keys.putIfAbsent(name, key);
+        if (previous != null && !previous.equals(key)) {
+            ambiguous.add(name);
+        }
+    }
+
+    private static <V> V resolve(Map<String, V> keys, Set<String> ambiguous, String name, String kind)
+            throws SQLException {
+        if (ambiguous.contains(name)) {
+            throw new SQLException("Ambiguous " + kind + " '" + name + "'; more than one row has that name");
+        }
+        V key = keys.get(name);
+        if (key == null) {
+            throw new SQLException("Unknown " + kind + " '" + name + "'; it must be loaded before rows that reference it");
+        }
+        return key;
+    }
+}
@@ -0,0 +1,161 @@
+// Import SQL package
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput and latency of CatalogService as the number of concurrent clients grows.
+ *
+ * Each client is a thread that calls the service and waits for the result in a loop, with this mix:
+ *  70% books by publisher, 15% titles by author, 5% all publishers, 5% authors by last name and
+ *  5% adding an author. Publishers and authors are picked with a skew towards the first ones, so
+ *  popular keys are requested concurrently and the coalescing of identical reads shows up.
+ * For every concurrency level the clients run for a fixed time and the report gives the calls per
+ *  second and the median, 99th percentile and highest latency of all calls at that level.
+ *
+ * The catalog cache is created with a time-to-live of 'cacheTtlMillis', 0 by default, so every read
+ *  reaches the database unless it is coalesced. If the catalog is empty, a generated one is loaded.
+ * The authors added by the test are named "Load TestN"; they are deleted again when the test ends.
+ * The database is chosen like in JDBC.main (-Ddb.url, -Ddb.user, -Ddb.password); pool.maxSize sets
+ *  the number of connections.
+ *
+ * Usage: java CatalogLoadTest [concurrencyLevels] [secondsPerLevel] [titles] [cacheTtlMillis]
+ *  where concurrencyLevels is a comma-separated list, e.g. 1,4,16,64
+ */
+public class CatalogLoadTest {
+
+    static final String DEFAULT_LEVELS = "1,2,4,8,16,32,64,128";
+    static final int DEFAULT_SECONDS = 10;
+    static final int DEFAULT_TITLES = 10_000;
+    static final String LOAD_FIRST_NAME = "Load";
+    static final String LOAD_LAST_NAME_PREFIX = "Test";
+
+    public static void main(String[] args) {
+        String[] levels = (args.length > 0 ? args[0] : DEFAULT_LEVELS).split(",");
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+        int titles = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_TITLES;
+        long cacheTtlMillis = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        Properties props = new Properties(System.getProperties());
+        if (props.getProperty("pool.maxSize") == null) {
+            props.setProperty("pool.maxSize", "32");
+        }
+        int poolSize = Integer.parseInt(props.getProperty("pool.maxSize"));
+        ExecutorService executor = ParallelScanner.newExecutor(poolSize);
+        try (ConnectionPool pool = ConnectionPool.fromProperties(props)) {
+            CatalogGenerator generator = CatalogGenerator.withDefaults(CatalogBenchmark.SEED, titles);
+            try (Connection conn = pool.getConnection()) {
+                SchemaMigrator migrator = new SchemaMigrator(conn);
+                migrator.migrate();
+                if (migrator.isEmpty("authors")) {
+                    System.out.println("Loading " + titles + " titles...");
+                    generator.load(new BulkLoader(conn, BulkLoader.DEFAULT_BATCH_SIZE));
+                }
+            }
+
+            CatalogService service = new CatalogService(pool,
+                    new CatalogCache(pool, CatalogCache.DEFAULT_MAX_ENTRIES, cacheTtlMillis), executor);
+            System.out.printf("%-12s| %-10s| %-10s| %-9s| %-9s| %-9s| %-8s\n",
+                    "clients", "calls", "calls/sec", "p50 ms", "p99 ms", "max ms", "errors");
+            System.out.println("--------------------------------------------------------------------------------");
+            try {
+                for (String level : levels) {
+                    run(service, generator, Integer.parseInt(level.trim()), seconds);
+                }
+            } finally {
+                System.out.println("\nDeleted " + deleteLoadAuthors(pool) + " authors added by the test");
+            }
+            System.out.println("Service: " + service);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Run 'clients' client threads against the service for the given time and print one line of the report.
+     */
+    private static void run(CatalogService service, CatalogGenerator generator, int clients, int seconds)
+            throws InterruptedException {
+        Histogram latency = new Histogram();
+        LongAdder errors = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                while (!stop.get()) {
+                    long start = System.nanoTime();
+                    try {
+                        call(service, generator).join();
+                        latency.record(System.nanoTime() - start);
+                    } catch (RuntimeException e) {
+                        errors.increment();
+                    }
+                }
+            }, "load-test-client-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long[] q = latency.quantiles(0.5, 0.99);
+        System.out.printf("%-12d| %-10d| %-10.0f| %-9.3f| %-9.3f| %-9.3f| %-8d\n", clients, latency.count(),
+                latency.count() / elapsed, q[0] / 1e6, q[1] / 1e6, latency.max() / 1e6, errors.sum());
+    }
+
+    /**
+     * Delete the authors added by addAuthor calls of this and earlier runs. They have no titles.
+     * @return the number of authors deleted
+     */
+    private static int deleteLoadAuthors(ConnectionPool pool) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement("DELETE FROM authors WHERE firstName = ? AND lastName LIKE ?")) {
+            ps.setString(1, LOAD_FIRST_NAME);
+            ps.setString(2, LOAD_LAST_NAME_PREFIX + "%");
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Make one call of the operation mix described above.
+     */
+    private static CompletableFuture<?> call(CatalogService service, CatalogGenerator generator) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int operation = random.nextInt(100);
+        if (operation < 70) {
+            return service.booksByPublisher(generator.publisher(skewed(random, generator.publisherCount()))[0]);
+        } else if (operation < 85) {
+            String[] author = generator.author(skewed(random, generator.authorCount()));
+            return service.titlesByAuthor(author[0], author[1]);
+        } else if (operation < 90) {
+            return service.allPublishers();
+        } else if (operation < 95) {
+            return service.authorsByLastName();
+        } else {
+            return service.addAuthor(LOAD_FIRST_NAME, LOAD_LAST_NAME_PREFIX + random.nextInt(1_000_000));
+        }
+    }
+
+    /**
+     * @return an index below 'count', with low indexes much more likely than high ones
+     */
+    private static int skewed(ThreadLocalRandom random, int count) {
+        double u = random.nextDouble();
+        return (int) (count * u * u * u);
+    }
+}
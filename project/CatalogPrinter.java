@@ -0,0 +1,83 @@
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Formats catalog query results as text tables.
+ * Kept apart from CatalogQueries so the queries can be reused and measured without any printing.
+ */
+public class CatalogPrinter {
+
+    /**
+     * Print authors as returned by CatalogQueries.authorsByLastName()
+     * @param out where the table is printed
+     * @param authors the authors to print
+     */
+    static void printAuthors(PrintStream out, List<Author> authors) {
+        out.printf("%-9s| %-15s| %-12s\n", "authorID", "lastName", "firstName");
+        out.println("---------------------------------------------------");
+        for (Author author : authors) {
+            out.printf("%-9s| %-15s| %-12s\n", author.authorID(), author.lastName(), author.firstName());
+        }
+        out.println();
+    }
+
+    /**
+     * Print every column of the given titles
+     * @param out where the table is printed
+     * @param titles the titles to print; a stream from CatalogStreams can be printed with titles::iterator
+     */
+    static void printTitles(PrintStream out, Iterable<Title> titles) {
+        out.printf("%-13s| %-25s| %-14s| %-5s| %-12s| %-4s\n", "isbn", "title", "editionNumber", "year", "publisherID", "price");
+        out.println("----------------------------------------------------------------------------------------------------");
+        for (Title title : titles) {
+            out.printf("%-13s| %-25s| %-14s| %-5s| %-12s| %-4s\n", title.isbn(), title.title(), title.editionNumber(),
+                    title.year(), title.publisherID(), title.price());
+        }
+        out.println();
+    }
+
+    /**
+     * Print publishers as returned by CatalogQueries.allPublishers()
+     * @param out where the table is printed
+     * @param publishers the publishers to print
+     */
+    static void printPublishers(PrintStream out, List<Publisher> publishers) {
+        out.printf("%-12s| %-15s\n", "publisherID", "publisherName");
+        out.println("-------------------------------------");
+        for (Publisher publisher : publishers) {
+            out.printf("%-12s| %-15s\n", publisher.publisherID(), publisher.publisherName());
+        }
+        out.println();
+    }
+
+    /**
+     * Print the title, year and isbn of books as returned by CatalogQueries.booksByPublisher()
+     * @param out where the table is printed
+     * @param books the books to print
+     */
+    static void printBooks(PrintStream out, List<Title> books) {
+        out.printf("%-25s| %-5s| %-13s\n", "title", "year", "isbn");
+        out.println("----------------------------------------------------------------------------------------------------");
+        for (Title book : books) {
+            out.printf("%-25s| %-5s| %-13s\n", book.title(), book.year(), book.isbn());
+        }
+    }
+
+    /**
+     * Print rows of the authorISBN table
+     * @param out where the table is printed
+     * @param links the rows to print; a stream from CatalogStreams can be printed with links::iterator
+     */
+    static void printAuthorISBNs(PrintStream out, Iterable<AuthorISBN> links) {
+        out.printf("%-9s| %-13s\n", "authorID", "ISBN");
+        out.println("-------------------------------------");
+        for (AuthorISBN link : links) {
+            out.printf("%-9s| %-13s\n", link.authorID(), link.isbn());
+        }
+        out.println();
+    }
+
+    private CatalogPrinter() {
+        // Should not instantiate this class.
+    }
+}
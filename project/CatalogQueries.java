@@ -0,0 +1,170 @@
+// Import SQL package
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed, parameterized queries against the catalog.
+ * Every query is prepared once per connection and the PreparedStatement is reused on later calls,
+ *  so repeated lookups skip parsing and planning on the server. Results are returned as records;
+ *  formatting them for display is left to CatalogPrinter.
+ * The latency, row count and failures of every query are recorded in Metrics.
+ *
+ * An instance belongs to one connection and is not thread safe. Close it before returning
+ *  the connection to the pool so the cached statements are released.
+ */
+public class CatalogQueries implements AutoCloseable {
+
+    private static final QueryMetrics AUTHORS_BY_LAST_NAME = Metrics.query("authors-by-last-name");
+    private static final QueryMetrics ALL_PUBLISHERS = Metrics.query("all-publishers");
+    private static final QueryMetrics TITLES = Metrics.query("titles");
+    private static final QueryMetrics PUBLISHER_IDS = Metrics.query("publisher-ids");
+    private static final QueryMetrics BOOKS_BY_PUBLISHER = Metrics.query("books-by-publisher");
+    private static final QueryMetrics TITLES_BY_AUTHOR = Metrics.query("titles-by-author");
+    private static final QueryMetrics AUTHOR_ISBNS = Metrics.query("author-isbns");
+    private static final ParameterBinder NO_PARAMETERS = ps -> { };
+
+    private final Connection conn;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    /**
+     * @param conn the connection the queries run on
+     */
+    public CatalogQueries(Connection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * @return every author, ordered by last name and then first name
+     */
+    public List<Author> authorsByLastName() throws SQLException {
+        return query(AUTHORS_BY_LAST_NAME, SQL.SELECT_AUTHORS_BY_LAST_NAME, NO_PARAMETERS, CatalogQueries::readAuthor);
+    }
+
+    /**
+     * @return every publisher
+     */
+    public List<Publisher> allPublishers() throws SQLException {
+        return query(ALL_PUBLISHERS, SQL.SELECT_PUBLISHERS, NO_PARAMETERS,
+                rs -> new Publisher(rs.getInt("publisherID"), rs.getString("publisherName")));
+    }
+
+    /**
+     * @return every title
+     */
+    public List<Title> titles() throws SQLException {
+        return query(TITLES, SQL.SELECT_TITLES, NO_PARAMETERS, CatalogQueries::readTitle);
+    }
+
+    /**
+     * @param publisherName the publisher we want books published by
+     * @return the publisher's books ordered by title, or an empty list if there is no such publisher
+     */
+    public List<Title> booksByPublisher(String publisherName) throws SQLException {
+        List<Integer> publisherIds = query(PUBLISHER_IDS, SQL.SELECT_PUBLISHER_IDS_BY_NAME,
+                ps -> ps.setString(1, publisherName), rs -> rs.getInt("publisherID"));
+        if (publisherIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (publisherIds.size() > 1) {
+            // Several publishers share the name, so their books have to be sorted together
+            return query(BOOKS_BY_PUBLISHER, SQL.SELECT_BOOKS_BY_PUBLISHER,
+                    ps -> ps.setString(1, publisherName), CatalogQueries::readTitle);
+        }
+        return query(BOOKS_BY_PUBLISHER, SQL.SELECT_BOOKS_BY_PUBLISHER_ID,
+                ps -> ps.setInt(1, publisherIds.get(0)), CatalogQueries::readTitle);
+    }
+
+    /**
+     * @return the titles written by the author with the given name, ordered by title
+     */
+    public List<Title> titlesByAuthor(String firstName, String lastName) throws SQLException {
+        return query(TITLES_BY_AUTHOR, SQL.SELECT_TITLES_BY_AUTHOR, ps -> {
+            ps.setString(1, firstName);
+            ps.setString(2, lastName);
+        }, CatalogQueries::readTitle);
+    }
+
+    /**
+     * @return every row of the 'authorISBN' table
+     */
+    public List<AuthorISBN> authorISBNs() throws SQLException {
+        return query(AUTHOR_ISBNS, SQL.SELECT_AUTHOR_ISBNS, NO_PARAMETERS,
+                rs -> new AuthorISBN(rs.getInt("authorID"), rs.getString("isbn")));
+    }
+
+    /**
+     * Close every cached statement.
+     */
+    @Override
+    public void close() throws SQLException {
+        SQLException failure = null;
+        for (PreparedStatement ps : statements.values()) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                failure = e;
+            }
+        }
+        statements.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return the cached statement for the given SQL, preparing it on first use
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps == null) {
+            ps = conn.prepareStatement(sql);
+            statements.put(sql, ps);
+        }
+        return ps;
+    }
+
+    static Author readAuthor(ResultSet rs) throws SQLException {
+        return new Author(rs.getInt("authorID"), rs.getString("firstName"), rs.getString("lastName"));
+    }
+
+    static Title readTitle(ResultSet rs) throws SQLException {
+        short year = rs.getShort("Year");
+        Short nullableYear = rs.wasNull() ? null : year;
+        return new Title(rs.getString("isbn"), rs.getString("title"), rs.getInt("editionNumber"),
+                nullableYear, rs.getInt("publisherID"), rs.getBigDecimal("price"));
+    }
+
+    /**
+     * Prepare (or reuse) the statement, bind its parameters, run it and map every row,
+     *  recording the time taken, the number of rows or the failure in the query's metrics.
+     */
+    private <T> List<T> query(QueryMetrics metrics, String sql, ParameterBinder binder,
+                              CatalogStreams.RowMapper<T> mapper) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement ps = prepare(sql);
+            binder.bind(ps);
+            List<T> rows = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(mapper.map(rs));
+                }
+            }
+            metrics.record(start, rows.size());
+            return rows;
+        } catch (SQLException | RuntimeException e) {
+            metrics.error();
+            throw e;
+        }
+    }
+
+    /**
+     * Sets the parameters of a prepared statement.
+     */
+    private interface ParameterBinder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+}
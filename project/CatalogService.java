@@ -0,0 +1,239 @@
+// Import SQL package
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import javax.sql.DataSource;
+
+/**
+ * The catalog operations as asynchronous calls that can be made from any number of threads at once.
+ *
+ * Every call runs on the executor with its own connection borrowed from the DataSource, so calls
+ *  overlap up to the size of the connection pool, and returns a CompletableFuture of the result.
+ *  Failures complete the future exceptionally with the SQLException.
+ * The executor should have a thread for every connection of the pool, since tasks block on the pool and on
+ *  the database: ParallelScanner.newExecutor() uses virtual threads where the runtime has them and a fixed
+ *  pool of platform threads otherwise. A ForkJoinPool is not suitable, as its threads would block in JDBC calls.
+ *
+ * Identical reads that are in flight at the same time are coalesced: a read with the same operation and
+ *  arguments as one that has not finished yet gets a future of that read's result instead of a query of
+ *  its own. Every write drops the in-flight reads it affects from the coalescing map when it completes, so a
+ *  read requested after a write has finished never shares the result of a read that started before it, while
+ *  reads of other publishers and authors keep being coalesced. Names are matched like MySQL's case- and
+ *  accent-insensitive collation, so a write to "pearson" also drops a read of "Pearson".
+ *  Results are immutable lists, so sharing them between callers is safe.
+ * Books by publisher and titles by author also go through the CatalogCache, which the writes invalidate.
+ */
+public class CatalogService {
+
+    private static final String AUTHORS_BY_LAST_NAME = "authors-by-last-name";
+    private static final String ALL_PUBLISHERS = "all-publishers";
+    private static final String BOOKS_BY_PUBLISHER = "books-by-publisher";
+    private static final String TITLES_BY_AUTHOR = "titles-by-author";
+
+    private final DataSource dataSource;
+    private final CatalogCache cache;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<ReadKey, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder coalescedReads = new LongAdder();
+
+    /**
+     * @param dataSource where every call borrows its connection
+     * @param cache the cache for publisher and author lookups, invalidated by the writes
+     * @param executor runs the calls; it is not shut down by this class
+     */
+    public CatalogService(DataSource dataSource, CatalogCache cache, ExecutorService executor) {
+        this.dataSource = dataSource;
+        this.cache = cache;
+        this.executor = executor;
+    }
+
+    /**
+     * @return every author, ordered by last name and then first name
+     */
+    public CompletableFuture<List<Author>> authorsByLastName() {
+        return read(new ReadKey(AUTHORS_BY_LAST_NAME), () -> {
+            try (Connection conn = dataSource.getConnection();
+                 CatalogQueries queries = new CatalogQueries(conn)) {
+                return List.copyOf(queries.authorsByLastName());
+            }
+        });
+    }
+
+    /**
+     * @return every publisher
+     */
+    public CompletableFuture<List<Publisher>> allPublishers() {
+        return read(new ReadKey(ALL_PUBLISHERS), () -> {
+            try (Connection conn = dataSource.getConnection();
+                 CatalogQueries queries = new CatalogQueries(conn)) {
+                return List.copyOf(queries.allPublishers());
+            }
+        });
+    }
+
+    /**
+     * @return the publisher's books ordered by title
+     */
+    public CompletableFuture<List<Title>> booksByPublisher(String publisherName) {
+        return read(new ReadKey(BOOKS_BY_PUBLISHER, publisherName), () -> cache.booksByPublisher(publisherName));
+    }
+
+    /**
+     * @return the author's titles ordered by title
+     */
+    public CompletableFuture<List<Title>> titlesByAuthor(String firstName, String lastName) {
+        return read(new ReadKey(TITLES_BY_AUTHOR, firstName, lastName), () -> cache.titlesByAuthor(firstName, lastName));
+    }
+
+    /**
+     * @return the generated authorID
+     */
+    public CompletableFuture<Integer> addAuthor(String firstName, String lastName) {
+        return write(writer -> writer.addAuthor(firstName, lastName),
+                key -> key.is(AUTHORS_BY_LAST_NAME) || key.is(TITLES_BY_AUTHOR, firstName, lastName));
+    }
+
+    /**
+     * @return the number of authors changed
+     */
+    public CompletableFuture<Integer> updateAuthorFirstName(String oldFirstName, String newFirstName) {
+        return write(writer -> writer.updateAuthorFirstName(oldFirstName, newFirstName),
+                key -> key.is(AUTHORS_BY_LAST_NAME) || key.is(TITLES_BY_AUTHOR, oldFirstName)
+                       || key.is(TITLES_BY_AUTHOR, newFirstName));
+    }
+
+    /**
+     * @return the generated publisherID
+     */
+    public CompletableFuture<Integer> addPublisher(String publisherName) {
+        return write(writer -> writer.addPublisher(publisherName),
+                key -> key.is(ALL_PUBLISHERS) || key.is(BOOKS_BY_PUBLISHER, publisherName));
+    }
+
+    /**
+     * @return the number of publishers changed
+     */
+    public CompletableFuture<Integer> renamePublisher(String oldName, String newName) {
+        return write(writer -> writer.renamePublisher(oldName, newName),
+                key -> key.is(ALL_PUBLISHERS) || key.is(BOOKS_BY_PUBLISHER, oldName) || key.is(BOOKS_BY_PUBLISHER, newName));
+    }
+
+    /**
+     * Add a title by an existing author; see CatalogWriter.addTitle().
+     */
+    public CompletableFuture<Void> addTitle(String isbn, String title, int editionNumber, int year, String publisherName,
+                                            BigDecimal price, String authorFirstName, String authorLastName) {
+        return write(writer -> {
+            writer.addTitle(isbn, title, editionNumber, year, publisherName, price, authorFirstName, authorLastName);
+            return null;
+        }, key -> key.is(BOOKS_BY_PUBLISHER, publisherName) || key.is(TITLES_BY_AUTHOR, authorFirstName, authorLastName));
+    }
+
+    /**
+     * @return the number of reads requested, and how many of them shared the result of another read
+     */
+    @Override
+    public String toString() {
+        return "reads " + reads.sum() + ", coalesced " + coalescedReads.sum();
+    }
+
+    /**
+     * Start the read, or join the identical read already in flight.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> read(ReadKey key, SqlCall<T> call) {
+        reads.increment();
+        CompletableFuture<T> started = new CompletableFuture<>();
+        CompletableFuture<T> running = (CompletableFuture<T>) inFlight.putIfAbsent(key, started);
+        if (running != null) {
+            coalescedReads.increment();
+            // A copy, so a caller that cancels or completes its future does not affect the others
+            return running.copy();
+        }
+        // Removed before the result is published, so a read requested after that starts a query of its own
+        submit(started, call, () -> inFlight.remove(key, started));
+        return started.copy();
+    }
+
+    /**
+     * Run the write, and drop the in-flight reads for which 'affects' is true before its future completes.
+     */
+    private <T> CompletableFuture<T> write(WriteCall<T> call, Predicate<ReadKey> affects) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        submit(result, () -> {
+            try (Connection conn = dataSource.getConnection()) {
+                return call.call(new CatalogWriter(conn, cache));
+            }
+        }, () -> inFlight.keySet().removeIf(affects));
+        return result;
+    }
+
+    /**
+     * Run the call on the executor and complete the future with its result or failure,
+     *  running 'beforeCompletion' first.
+     */
+    private <T> void submit(CompletableFuture<T> future, SqlCall<T> call, Runnable beforeCompletion) {
+        try {
+            executor.execute(() -> {
+                T value = null;
+                Throwable failure = null;
+                try {
+                    value = call.call();
+                } catch (Throwable e) {
+                    failure = e;
+                }
+                beforeCompletion.run();
+                if (failure == null) {
+                    future.complete(value);
+                } else {
+                    future.completeExceptionally(failure);
+                }
+            });
+        } catch (RuntimeException e) {
+            // The executor rejected the task
+            beforeCompletion.run();
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * A read operation together with its arguments, identifying reads that can share one result.
+     */
+    private record ReadKey(String operation, List<Object> args) {
+
+        ReadKey(String operation, Object... args) {
+            this(operation, Arrays.asList(args));
+        }
+
+        /**
+         * @return true if this is a read of the operation whose first arguments are the given names,
+         *  compared like CatalogSnapshot and CatalogCache compare them
+         */
+        boolean is(String operation, String... names) {
+            if (!this.operation.equals(operation)) {
+                return false;
+            }
+            for (int i = 0; i < names.length; i++) {
+                if (!CatalogSnapshot.sameName(names[i], (String) args.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    private interface WriteCall<T> {
+        T call(CatalogWriter writer) throws SQLException;
+    }
+}
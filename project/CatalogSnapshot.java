@@ -0,0 +1,1069 @@
+// Import SQL package
+import java.math.BigDecimal;
+import java.sql.*;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * An immutable in-memory copy of the catalog, laid out in columns of primitive arrays, that answers the
+ *  read-heavy catalog queries without touching the database.
+ *
+ * Layout:
+ * - Every table is a set of parallel arrays, one per column, holding one row per index. Authors and
+ *   publishers are ordered by ID and titles by ISBN, so a row is found by binary search on its key.
+ * - Names and titles are dictionary encoded (StringDictionary): the columns hold int codes and every
+ *   distinct string is stored once.
+ * - ISBNs of up to 15 digits are packed into a long, together with their length so leading zeros
+ *   survive; other ISBNs are dictionary encoded and stored as negative numbers. Prices are cents.
+ * - Orders the queries need (authors by name, publishers by name, titles by title) are precomputed as
+ *   arrays of row numbers, and the joins as IntMultimaps of row numbers: the titles of every publisher
+ *   and author in title order, and the authors of every title.
+ * - Every dictionary of names and titles has CollationRanks: the rank of each string in collation order,
+ *   where equal names share a rank. Rows are ordered by rank, and a lookup makes one collation key for the
+ *   name it is given, finds its rank, and then only compares ints.
+ * A lookup is a binary search over an int array plus a walk over a slice of another, with no boxing
+ *  and no hashing of strings; only the returned records are allocated.
+ *
+ * Names and titles are compared with a java.text.Collator for the root locale at PRIMARY strength, which
+ *  ignores case and accents like MySQL's default collation utf8mb4_0900_ai_ci, so "Pearson", "pearson"
+ *  and "Péarson" are the same publisher here as in CatalogQueries. Both follow the Unicode Collation
+ *  Algorithm, but the JDK's rules are not MySQL's UCA 9.0.0 tables: letters, digits, spaces and common
+ *  punctuation sort alike, while characters the two weigh differently (some symbols, ligatures and
+ *  scripts without case) may sort or match differently. Rows with equal names are ordered by ID here,
+ *  whereas MySQL leaves their order unspecified.
+ *
+ * Snapshots never change. load() reads the whole catalog; refresh() reads only the rows whose
+ *  'updatedAt' column (schema version 3) is at or after the newest change already seen, minus a safety
+ *  margin of REFRESH_OVERLAP_MILLIS for transactions that committed late, and returns a new snapshot
+ *  with those rows merged in. Only the changed rows are sorted: they are merged into the snapshot's
+ *  arrays, which are already in key order and in name order, in one linear pass with a binary search per
+ *  changed row, and the joins are rebuilt from the merged orders by counting, without sorting. Deleted
+ *  rows are not visible to refresh(); they disappear at the next load(), so a reader that must not see
+ *  deleted rows should reload after deleting.
+ * Readers hold a reference to the current snapshot and swap in the refreshed one, e.g. in a volatile field.
+ */
+public class CatalogSnapshot {
+
+    static final long REFRESH_OVERLAP_MILLIS = 10_000;
+    private static final short NO_YEAR = Short.MIN_VALUE;
+    private static final int MAX_PACKED_ISBN_DIGITS = 15;
+    // Collators are not safe for concurrent use, so every thread gets its own
+    private static final ThreadLocal<Collator> COLLATOR = ThreadLocal.withInitial(() -> {
+        Collator collator = Collator.getInstance(Locale.ROOT);
+        collator.setStrength(Collator.PRIMARY);
+        return collator;
+    });
+
+    private final StringDictionary names;
+    private final StringDictionary publisherNames;
+    private final StringDictionary titleNames;
+    private final StringDictionary otherIsbns;
+    private final CollationRanks nameRanks;
+    private final CollationRanks publisherNameRanks;
+    private final CollationRanks titleNameRanks;
+
+    // Authors, ordered by authorID; the names are codes in 'names'
+    private final int[] authorIds;
+    private final int[] authorFirstNames;
+    private final int[] authorLastNames;
+    // Author rows ordered by last name, first name and authorID
+    private final int[] authorsByName;
+
+    // Publishers, ordered by publisherID
+    private final int[] publisherIds;
+    private final int[] publisherNameCodes;
+    private final int[] publishersByName;
+
+    // Titles, ordered by packed ISBN
+    private final long[] isbns;
+    private final int[] titleNameCodes;
+    private final int[] editions;
+    private final short[] years;
+    private final int[] titlePublisherIds;
+    private final int[] priceCents;
+    // The position of every title row when the titles are ordered by title
+    private final int[] titleRanks;
+
+    // Publisher row -> title rows, author row -> title rows (both in title order), title row -> author rows
+    private final IntMultimap titlesOfPublisher;
+    private final IntMultimap titlesOfAuthor;
+    private final IntMultimap authorsOfTitle;
+
+    // The newest updatedAt seen, in epoch milliseconds
+    private final long watermark;
+
+    /**
+     * Read the whole catalog into a new snapshot.
+     */
+    public static CatalogSnapshot load(Connection conn) throws SQLException {
+        Builder builder = new Builder(null);
+        builder.read(conn, null);
+        return builder.build();
+    }
+
+    /**
+     * Read the rows changed since this snapshot was loaded or last refreshed.
+     * Rows read again because of the overlap but unchanged are not counted as changes.
+     * @return a new snapshot with the changes merged in, or this snapshot if nothing changed
+     */
+    public CatalogSnapshot refresh(Connection conn) throws SQLException {
+        Builder builder = new Builder(this);
+        int changed = builder.read(conn, new Timestamp(watermark - REFRESH_OVERLAP_MILLIS));
+        return changed == 0 ? this : builder.build();
+    }
+
+    /**
+     * @return every author, ordered by last name and then first name
+     */
+    public List<Author> authorsByLastName() {
+        List<Author> authors = new ArrayList<>(authorsByName.length);
+        for (int row : authorsByName) {
+            authors.add(author(row));
+        }
+        return authors;
+    }
+
+    /**
+     * @return every publisher, ordered by publisherID
+     */
+    public List<Publisher> allPublishers() {
+        List<Publisher> publishers = new ArrayList<>(publisherIds.length);
+        for (int row = 0; row < publisherIds.length; row++) {
+            publishers.add(new Publisher(publisherIds[row], publisherNames.decode(publisherNameCodes[row])));
+        }
+        return publishers;
+    }
+
+    /**
+     * @return the books of the publishers with the given name, ordered by title
+     */
+    public List<Title> booksByPublisher(String publisherName) {
+        int rank = publisherNameRanks.rankOf(publisherName);
+        if (rank == CollationRanks.NO_RANK) {
+            return new ArrayList<>();
+        }
+        // Ranks are consecutive, so the publishers with the name end where the next rank would start
+        int from = lowerBound(publishersByName, row -> Integer.compare(publisherNameRanks.rank(publisherNameCodes[row]), rank));
+        int to = lowerBound(publishersByName, row -> Integer.compare(publisherNameRanks.rank(publisherNameCodes[row]), rank + 1));
+        return titlesOf(titlesOfPublisher, publishersByName, from, to);
+    }
+
+    /**
+     * @return the titles written by the authors with the given name, ordered by title
+     */
+    public List<Title> titlesByAuthor(String firstName, String lastName) {
+        int last = nameRanks.rankOf(lastName);
+        int first = nameRanks.rankOf(firstName);
+        if (last == CollationRanks.NO_RANK || first == CollationRanks.NO_RANK) {
+            return new ArrayList<>();
+        }
+        int from = lowerBound(authorsByName, row -> compareAuthor(row, last, first));
+        int to = lowerBound(authorsByName, row -> compareAuthor(row, last, first + 1));
+        return titlesOf(titlesOfAuthor, authorsByName, from, to);
+    }
+
+    /**
+     * @return the authors of the title with the given ISBN, ordered by authorID
+     */
+    public List<Author> authorsOfTitle(String isbn) {
+        int row = isbn == null ? -1 : Arrays.binarySearch(isbns, packIsbn(isbn, otherIsbns, false));
+        List<Author> authors = new ArrayList<>();
+        if (row >= 0) {
+            for (int i = authorsOfTitle.start(row); i < authorsOfTitle.end(row); i++) {
+                authors.add(author(authorsOfTitle.value(i)));
+            }
+        }
+        return authors;
+    }
+
+    public int authorCount() {
+        return authorIds.length;
+    }
+
+    public int publisherCount() {
+        return publisherIds.length;
+    }
+
+    public int titleCount() {
+        return isbns.length;
+    }
+
+    public int authorISBNCount() {
+        return authorsOfTitle.size();
+    }
+
+    /**
+     * @return the approximate heap used by the snapshot's arrays and strings, in bytes
+     */
+    public long estimatedBytes() {
+        long ints = 4L * (authorIds.length * 4L + publisherIds.length * 3L + isbns.length * 5L)
+                + 4L * 2 * (titlesOfPublisher.size() + titlesOfAuthor.size() + authorsOfTitle.size());
+        long longs = 8L * isbns.length;
+        long shorts = 2L * years.length;
+        return ints + longs + shorts + stringBytes(names) + stringBytes(publisherNames)
+                + stringBytes(titleNames) + stringBytes(otherIsbns)
+                + nameRanks.estimatedBytes() + publisherNameRanks.estimatedBytes() + titleNameRanks.estimatedBytes();
+    }
+
+    @Override
+    public String toString() {
+        return authorCount() + " authors, " + publisherCount() + " publishers, " + titleCount() + " titles, "
+                + authorISBNCount() + " authorISBN rows, changes up to " + new Timestamp(watermark);
+    }
+
+    private List<Title> titlesOf(IntMultimap titlesOfKey, int[] keyRows, int from, int to) {
+        List<Title> titles = new ArrayList<>();
+        if (to - from == 1) {
+            // One publisher or author: its titles are already in title order
+            int key = keyRows[from];
+            for (int i = titlesOfKey.start(key); i < titlesOfKey.end(key); i++) {
+                titles.add(title(titlesOfKey.value(i)));
+            }
+            return titles;
+        }
+        // Several with the same name: merge their titles by rank
+        int count = 0;
+        for (int k = from; k < to; k++) {
+            count += titlesOfKey.end(keyRows[k]) - titlesOfKey.start(keyRows[k]);
+        }
+        long[] ranked = new long[count];
+        int n = 0;
+        for (int k = from; k < to; k++) {
+            int key = keyRows[k];
+            for (int i = titlesOfKey.start(key); i < titlesOfKey.end(key); i++) {
+                int row = titlesOfKey.value(i);
+                ranked[n++] = (long) titleRanks[row] << 32 | row;
+            }
+        }
+        Arrays.sort(ranked);
+        for (long entry : ranked) {
+            titles.add(title((int) entry));
+        }
+        return titles;
+    }
+
+    private boolean hasRows(int authorId, long isbn) {
+        return Arrays.binarySearch(authorIds, authorId) >= 0 && Arrays.binarySearch(isbns, isbn) >= 0;
+    }
+
+    /**
+     * @return whether the snapshot links the author with the given ID to the title with the given packed ISBN
+     */
+    private boolean hasLink(int authorId, long isbn) {
+        int author = Arrays.binarySearch(authorIds, authorId);
+        int title = Arrays.binarySearch(isbns, isbn);
+        if (author < 0 || title < 0) {
+            return false;
+        }
+        for (int i = authorsOfTitle.start(title); i < authorsOfTitle.end(title); i++) {
+            if (authorsOfTitle.value(i) == author) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Author author(int row) {
+        return new Author(authorIds[row], names.decode(authorFirstNames[row]), names.decode(authorLastNames[row]));
+    }
+
+    private Title title(int row) {
+        return new Title(unpackIsbn(isbns[row], otherIsbns), titleNames.decode(titleNameCodes[row]), editions[row],
+                years[row] == NO_YEAR ? null : years[row], titlePublisherIds[row], BigDecimal.valueOf(priceCents[row], 2));
+    }
+
+    private int compareAuthor(int row, int lastRank, int firstRank) {
+        int c = Integer.compare(nameRanks.rank(authorLastNames[row]), lastRank);
+        return c != 0 ? c : Integer.compare(nameRanks.rank(authorFirstNames[row]), firstRank);
+    }
+
+    /**
+     * Compare without case or accents (see the class comment), with NULL before any name.
+     */
+    static int compareNames(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return COLLATOR.get().compare(a, b);
+    }
+
+    /**
+     * @return whether the two names are the same name to MySQL, i.e. equal without case or accents;
+     *  anything that has to agree with the queries on which rows a name matches should use this
+     */
+    static boolean sameName(String a, String b) {
+        return compareNames(a, b) == 0;
+    }
+
+    /**
+     * @return the first index in 'rows' whose row compares at or above the searched value
+     */
+    private static int lowerBound(int[] rows, RowComparison comparison) {
+        int low = 0;
+        int high = rows.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparison.compare(rows[mid]) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Pack an ISBN into a long: the digits in the low 56 bits and the number of digits above them.
+     * ISBNs that are not all digits, or too long, are stored in the dictionary and packed as -1 - code.
+     * @param add whether to add an unknown non-numeric ISBN to the dictionary; if not, it packs to Long.MIN_VALUE
+     */
+    static long packIsbn(String isbn, StringDictionary otherIsbns, boolean add) {
+        int length = isbn.length();
+        if (length > 0 && length <= MAX_PACKED_ISBN_DIGITS) {
+            long value = 0;
+            int i = 0;
+            while (i < length && isbn.charAt(i) >= '0' && isbn.charAt(i) <= '9') {
+                value = value * 10 + (isbn.charAt(i++) - '0');
+            }
+            if (i == length) {
+                return (long) length << 56 | value;
+            }
+        }
+        int code = add ? otherIsbns.encode(isbn) : otherIsbns.find(isbn);
+        return code < 0 ? Long.MIN_VALUE : -1L - code;
+    }
+
+    static String unpackIsbn(long packed, StringDictionary otherIsbns) {
+        if (packed < 0) {
+            return otherIsbns.decode((int) (-1L - packed));
+        }
+        char[] digits = new char[(int) (packed >>> 56)];
+        long value = packed & ((1L << 56) - 1);
+        for (int i = digits.length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(digits);
+    }
+
+    private static long stringBytes(StringDictionary dictionary) {
+        long bytes = 0;
+        for (int code = 0; code < dictionary.size(); code++) {
+            // Object header and fields of the String, plus its byte array (Latin-1 compact strings)
+            bytes += 24 + 16 + dictionary.decode(code).length();
+        }
+        return bytes + 4L * dictionary.size() * 3;
+    }
+
+    /**
+     * @param authorRows, publisherRows, titleRows the rows the builder read, one per key, in key order
+     */
+    private CatalogSnapshot(Builder b, int[] authorRows, int[] publisherRows, int[] titleRows) {
+        CatalogSnapshot base = b.base;
+        this.names = b.names;
+        this.publisherNames = b.publisherNames;
+        this.titleNames = b.titleNames;
+        this.otherIsbns = b.otherIsbns;
+        this.watermark = b.watermark;
+
+        // Merge the rows read into the base rows by key; a row read replaces the base row with its key
+        Merged authors = new Merged(base == null ? 0 : base.authorIds.length, row -> base.authorIds[row],
+                authorRows, row -> b.authorIds.values[row]);
+        this.authorIds = authors.pick(base == null ? null : base.authorIds, b.authorIds);
+        this.authorFirstNames = authors.pick(base == null ? null : base.authorFirstNames, b.authorFirstNames);
+        this.authorLastNames = authors.pick(base == null ? null : base.authorLastNames, b.authorLastNames);
+        Merged publishers = new Merged(base == null ? 0 : base.publisherIds.length, row -> base.publisherIds[row],
+                publisherRows, row -> b.publisherIds.values[row]);
+        this.publisherIds = publishers.pick(base == null ? null : base.publisherIds, b.publisherIds);
+        this.publisherNameCodes = publishers.pick(base == null ? null : base.publisherNameCodes, b.publisherNameCodes);
+        Merged titles = new Merged(base == null ? 0 : base.isbns.length, row -> base.isbns[row],
+                titleRows, row -> b.isbns.values[row]);
+        this.isbns = titles.pick(base == null ? null : base.isbns, b.isbns);
+        this.titleNameCodes = titles.pick(base == null ? null : base.titleNameCodes, b.titleNameCodes);
+        this.editions = titles.pick(base == null ? null : base.editions, b.editions);
+        this.titlePublisherIds = titles.pick(base == null ? null : base.titlePublisherIds, b.titlePublisherIds);
+        this.priceCents = titles.pick(base == null ? null : base.priceCents, b.priceCents);
+        this.years = titles.pickShorts(base == null ? null : base.years, b.years);
+
+        // The name orders: the base order with the changed rows merged in
+        this.nameRanks = new CollationRanks(names, base == null ? null : base.nameRanks, true);
+        this.publisherNameRanks = new CollationRanks(publisherNames, base == null ? null : base.publisherNameRanks, true);
+        this.titleNameRanks = new CollationRanks(titleNames, base == null ? null : base.titleNameRanks, false);
+        this.authorsByName = authors.mergeOrder(base == null ? new int[0] : base.authorsByName, (x, y) -> {
+            int c = Integer.compare(nameRanks.rank(authorLastNames[x]), nameRanks.rank(authorLastNames[y]));
+            if (c == 0) {
+                c = Integer.compare(nameRanks.rank(authorFirstNames[x]), nameRanks.rank(authorFirstNames[y]));
+            }
+            return c != 0 ? c : Integer.compare(authorIds[x], authorIds[y]);
+        });
+        this.publishersByName = publishers.mergeOrder(base == null ? new int[0] : base.publishersByName, (x, y) -> {
+            int c = Integer.compare(publisherNameRanks.rank(publisherNameCodes[x]), publisherNameRanks.rank(publisherNameCodes[y]));
+            return c != 0 ? c : Integer.compare(publisherIds[x], publisherIds[y]);
+        });
+        int[] byTitle = titles.mergeOrder(base == null ? new int[0] : base.titlesByTitle(), (x, y) -> {
+            int c = Integer.compare(titleNameRanks.rank(titleNameCodes[x]), titleNameRanks.rank(titleNameCodes[y]));
+            return c != 0 ? c : Long.compare(isbns[x], isbns[y]);
+        });
+        this.titleRanks = new int[byTitle.length];
+        for (int rank = 0; rank < byTitle.length; rank++) {
+            titleRanks[byTitle[rank]] = rank;
+        }
+
+        // Publisher -> titles, listed in title order so they need no sorting
+        int[] keys = new int[isbns.length];
+        int[] values = new int[isbns.length];
+        int n = 0;
+        for (int row : byTitle) {
+            int publisher = Arrays.binarySearch(publisherIds, titlePublisherIds[row]);
+            if (publisher >= 0) {
+                keys[n] = publisher;
+                values[n++] = row;
+            }
+        }
+        this.titlesOfPublisher = IntMultimap.of(publisherIds.length, keys, values, n);
+
+        // Title -> authors as (title row, author row) pairs in order and without duplicates: the base links,
+        //  which stay in order when their rows are renumbered, merged with the authorISBN rows read
+        long[] read = new long[b.linkAuthorIds.size];
+        n = 0;
+        for (int i = 0; i < b.linkAuthorIds.size; i++) {
+            int author = Arrays.binarySearch(authorIds, b.linkAuthorIds.values[i]);
+            int title = Arrays.binarySearch(isbns, b.linkIsbns.values[i]);
+            if (author >= 0 && title >= 0) {
+                read[n++] = (long) title << 32 | author;
+            }
+        }
+        Arrays.sort(read, 0, n);
+        int baseLinks = base == null ? 0 : base.authorsOfTitle.size();
+        int[] linkTitles = new int[baseLinks + n];
+        int[] linkAuthors = new int[baseLinks + n];
+        int links = 0;
+        int next = 0;
+        for (int row = 0; base != null && row < base.isbns.length; row++) {
+            for (int i = base.authorsOfTitle.start(row); i < base.authorsOfTitle.end(row); i++) {
+                long link = (long) titles.baseToMerged[row] << 32 | authors.baseToMerged[base.authorsOfTitle.value(i)];
+                while (next < n && read[next] < link) {
+                    links = addLink(read[next++], linkTitles, linkAuthors, links);
+                }
+                links = addLink(link, linkTitles, linkAuthors, links);
+            }
+        }
+        while (next < n) {
+            links = addLink(read[next++], linkTitles, linkAuthors, links);
+        }
+        this.authorsOfTitle = IntMultimap.of(isbns.length, linkTitles, linkAuthors, links);
+
+        // Author -> titles, listed in title order
+        keys = new int[links];
+        values = new int[links];
+        n = 0;
+        for (int row : byTitle) {
+            for (int i = authorsOfTitle.start(row); i < authorsOfTitle.end(row); i++) {
+                keys[n] = authorsOfTitle.value(i);
+                values[n++] = row;
+            }
+        }
+        this.titlesOfAuthor = IntMultimap.of(authorIds.length, keys, values, n);
+    }
+
+    /**
+     * @return the title rows in title order
+     */
+    private int[] titlesByTitle() {
+        int[] rows = new int[titleRanks.length];
+        for (int row = 0; row < titleRanks.length; row++) {
+            rows[titleRanks[row]] = row;
+        }
+        return rows;
+    }
+
+    /**
+     * Append a (title row, author row) pair packed into a long, unless it repeats the last one.
+     * @return the number of pairs afterwards
+     */
+    private static int addLink(long link, int[] titles, int[] authors, int count) {
+        int title = (int) (link >>> 32);
+        int author = (int) link;
+        if (count > 0 && titles[count - 1] == title && authors[count - 1] == author) {
+            return count;
+        }
+        titles[count] = title;
+        authors[count] = author;
+        return count + 1;
+    }
+
+    /**
+     * @return the row numbers 0 .. count - 1 in the order of the comparator, equal rows kept in row order
+     */
+    static int[] sortedRows(int count, RowOrder order) {
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = i;
+        }
+        sort(rows, order);
+        return rows;
+    }
+
+    /**
+     * Sort the rows in the order of the comparator, equal rows kept in the order they are in.
+     */
+    static void sort(int[] rows, RowOrder order) {
+        mergeSort(rows, new int[rows.length], 0, rows.length, order);
+    }
+
+    private static void mergeSort(int[] rows, int[] buffer, int from, int to, RowOrder order) {
+        if (to - from < 16) {
+            for (int i = from + 1; i < to; i++) {
+                int row = rows[i];
+                int j = i - 1;
+                while (j >= from && order.compare(rows[j], row) > 0) {
+                    rows[j + 1] = rows[j];
+                    j--;
+                }
+                rows[j + 1] = row;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(rows, buffer, from, mid, order);
+        mergeSort(rows, buffer, mid, to, order);
+        if (order.compare(rows[mid - 1], rows[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(rows, from, buffer, from, to - from);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < mid && order.compare(buffer[left], buffer[right]) <= 0)) {
+                rows[i] = buffer[left++];
+            } else {
+                rows[i] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * Usage: java CatalogSnapshot [lookups]
+     * Loads a snapshot of the catalog, reports its size and load time, and times publisher and author lookups.
+     */
+    public static void main(String[] args) {
+        int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Properties props = System.getProperties();
+        try (ConnectionPool pool = ConnectionPool.fromProperties(props);
+             Connection conn = pool.getConnection()) {
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+            long start = System.nanoTime();
+            CatalogSnapshot snapshot = load(conn);
+            double loadSeconds = (System.nanoTime() - start) / 1e9;
+            System.gc();
+            long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+            System.out.println("Snapshot: " + snapshot);
+            System.out.printf("Loaded in %.3f seconds, about %.1f MB estimated, %.1f MB of heap measured\n",
+                    loadSeconds, snapshot.estimatedBytes() / 1e6, (heapAfter - heapBefore) / 1e6);
+
+            start = System.nanoTime();
+            CatalogSnapshot refreshed = snapshot.refresh(conn);
+            System.out.printf("Refreshed in %.3f ms (%s)\n", (System.nanoTime() - start) / 1e6,
+                    refreshed == snapshot ? "no changes" : "changes merged");
+
+            List<Publisher> publishers = snapshot.allPublishers();
+            List<Author> authors = snapshot.authorsByLastName();
+            if (publishers.isEmpty() || authors.isEmpty()) {
+                System.out.println("The catalog is empty");
+                return;
+            }
+            long rows = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                rows += snapshot.booksByPublisher(publishers.get(i % publishers.size()).publisherName()).size();
+            }
+            double publisherNanos = (System.nanoTime() - start) / (double) lookups;
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                Author author = authors.get(i % authors.size());
+                rows += snapshot.titlesByAuthor(author.firstName(), author.lastName()).size();
+            }
+            double authorNanos = (System.nanoTime() - start) / (double) lookups;
+            System.out.printf("booksByPublisher: %.0f ns per lookup\n", publisherNanos);
+            System.out.printf("titlesByAuthor:   %.0f ns per lookup\n", authorNanos);
+            System.out.println("(" + rows + " rows returned)");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Compares a row with the value being searched for.
+     */
+    private interface RowComparison {
+        int compare(int row);
+    }
+
+    /**
+     * Orders two rows.
+     */
+    interface RowOrder {
+        int compare(int x, int y);
+    }
+
+    /**
+     * Collects the rows read from the database and builds a snapshot from them and the previous snapshot.
+     * Rows are appended; when a key appears more than once, the last row with it wins.
+     */
+    private static final class Builder {
+        final StringDictionary names;
+        final StringDictionary publisherNames;
+        final StringDictionary titleNames;
+        final StringDictionary otherIsbns;
+        final IntColumn authorIds = new IntColumn();
+        final IntColumn authorFirstNames = new IntColumn();
+        final IntColumn authorLastNames = new IntColumn();
+        final IntColumn publisherIds = new IntColumn();
+        final IntColumn publisherNameCodes = new IntColumn();
+        final LongColumn isbns = new LongColumn();
+        final IntColumn titleNameCodes = new IntColumn();
+        final IntColumn editions = new IntColumn();
+        final IntColumn years = new IntColumn();
+        final IntColumn titlePublisherIds = new IntColumn();
+        final IntColumn priceCents = new IntColumn();
+        final IntColumn linkAuthorIds = new IntColumn();
+        final LongColumn linkIsbns = new LongColumn();
+        final CatalogSnapshot base;
+        long watermark;
+
+        /**
+         * @param base the snapshot whose rows the new one starts from, or null to start empty
+         */
+        Builder(CatalogSnapshot base) {
+            this.base = base;
+            if (base == null) {
+                names = new StringDictionary(1024);
+                publisherNames = new StringDictionary(256);
+                titleNames = new StringDictionary(1024);
+                otherIsbns = new StringDictionary(16);
+                return;
+            }
+            // The codes in the base's columns stay valid in copies of its dictionaries
+            names = base.names.copy();
+            publisherNames = base.publisherNames.copy();
+            titleNames = base.titleNames.copy();
+            otherIsbns = base.otherIsbns.copy();
+            watermark = base.watermark;
+        }
+
+        /**
+         * Read the rows of all four tables, or only those changed at or after 'since' if it is not null.
+         * @return the number of rows read that differ from the base snapshot
+         */
+        int read(Connection conn, Timestamp since) throws SQLException {
+            int changed = 0;
+            try (ResultSet rs = query(conn, SQL.SNAPSHOT_AUTHORS, since)) {
+                while (rs.next()) {
+                    int id = rs.getInt("authorID");
+                    int first = names.encode(rs.getString("firstName"));
+                    int last = names.encode(rs.getString("lastName"));
+                    seen(rs.getTimestamp("updatedAt"));
+                    int row = base == null ? -1 : Arrays.binarySearch(base.authorIds, id);
+                    if (row < 0 || base.authorFirstNames[row] != first || base.authorLastNames[row] != last) {
+                        authorIds.add(id);
+                        authorFirstNames.add(first);
+                        authorLastNames.add(last);
+                        changed++;
+                    }
+                }
+            }
+            try (ResultSet rs = query(conn, SQL.SNAPSHOT_PUBLISHERS, since)) {
+                while (rs.next()) {
+                    int id = rs.getInt("publisherID");
+                    int name = publisherNames.encode(rs.getString("publisherName"));
+                    seen(rs.getTimestamp("updatedAt"));
+                    int row = base == null ? -1 : Arrays.binarySearch(base.publisherIds, id);
+                    if (row < 0 || base.publisherNameCodes[row] != name) {
+                        publisherIds.add(id);
+                        publisherNameCodes.add(name);
+                        changed++;
+                    }
+                }
+            }
+            try (ResultSet rs = query(conn, SQL.SNAPSHOT_TITLES, since)) {
+                while (rs.next()) {
+                    long isbn = packIsbn(rs.getString("isbn"), otherIsbns, true);
+                    int title = titleNames.encode(rs.getString("title"));
+                    int edition = rs.getInt("editionNumber");
+                    short year = rs.getShort("Year");
+                    if (rs.wasNull()) {
+                        year = NO_YEAR;
+                    }
+                    int publisher = rs.getInt("publisherID");
+                    BigDecimal price = rs.getBigDecimal("price");
+                    int cents = price.movePointRight(2).intValue();
+                    seen(rs.getTimestamp("updatedAt"));
+                    int row = base == null ? -1 : Arrays.binarySearch(base.isbns, isbn);
+                    if (row < 0 || base.titleNameCodes[row] != title || base.editions[row] != edition
+                            || base.years[row] != year || base.titlePublisherIds[row] != publisher
+                            || base.priceCents[row] != cents) {
+                        isbns.add(isbn);
+                        titleNameCodes.add(title);
+                        editions.add(edition);
+                        years.add(year);
+                        titlePublisherIds.add(publisher);
+                        priceCents.add(cents);
+                        changed++;
+                    }
+                }
+            }
+            try (ResultSet rs = query(conn, SQL.SNAPSHOT_AUTHOR_ISBNS, since)) {
+                while (rs.next()) {
+                    int authorId = rs.getInt("authorID");
+                    long isbn = packIsbn(rs.getString("isbn"), otherIsbns, true);
+                    seen(rs.getTimestamp("updatedAt"));
+                    if (base == null || !base.hasLink(authorId, isbn)) {
+                        linkAuthorIds.add(authorId);
+                        linkIsbns.add(isbn);
+                        // A link to an author or title the snapshot does not have only matters if that row was just read
+                        if (changed > 0 || base == null || base.hasRows(authorId, isbn)) {
+                            changed++;
+                        }
+                    }
+                }
+            }
+            return changed;
+        }
+
+        /**
+         * Run a snapshot query as a forward-only cursor; the result set closes its statement.
+         */
+        private static ResultSet query(Connection conn, String sql, Timestamp since) throws SQLException {
+            PreparedStatement ps = conn.prepareStatement(since == null ? sql : sql + SQL.CHANGED_SINCE,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            try {
+                ps.setFetchSize(CatalogStreams.DEFAULT_FETCH_SIZE);
+                if (since != null) {
+                    ps.setTimestamp(1, since);
+                }
+                ps.closeOnCompletion();
+                return ps.executeQuery();
+            } catch (SQLException e) {
+                ps.close();
+                throw e;
+            }
+        }
+
+        private void seen(Timestamp updatedAt) {
+            if (updatedAt != null && updatedAt.getTime() > watermark) {
+                watermark = updatedAt.getTime();
+            }
+        }
+
+        /**
+         * Sort the rows read by key, which is all the sorting a refresh does, and merge them into the base rows.
+         */
+        CatalogSnapshot build() {
+            int[] authorRows = lastOfEachKey(sortedRows(authorIds.size, (x, y) -> Integer.compare(authorIds.values[x], authorIds.values[y])),
+                    (x, y) -> authorIds.values[x] == authorIds.values[y]);
+            int[] publisherRows = lastOfEachKey(sortedRows(publisherIds.size, (x, y) -> Integer.compare(publisherIds.values[x], publisherIds.values[y])),
+                    (x, y) -> publisherIds.values[x] == publisherIds.values[y]);
+            int[] titleRows = lastOfEachKey(sortedRows(isbns.size, (x, y) -> Long.compare(isbns.values[x], isbns.values[y])),
+                    (x, y) -> isbns.values[x] == isbns.values[y]);
+            return new CatalogSnapshot(this, authorRows, publisherRows, titleRows);
+        }
+
+        /**
+         * @param sorted rows in key order, rows with equal keys in the order they were added
+         * @return the last row added for every key, in key order
+         */
+        private static int[] lastOfEachKey(int[] sorted, SameKey sameKey) {
+            int[] rows = new int[sorted.length];
+            int n = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i + 1 == sorted.length || !sameKey.test(sorted[i], sorted[i + 1])) {
+                    rows[n++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(rows, n);
+        }
+    }
+
+    private interface SameKey {
+        boolean test(int x, int y);
+    }
+
+    /**
+     * Gives the key of a row.
+     */
+    private interface RowKey {
+        long key(int row);
+    }
+
+    /**
+     * How the rows of a table are merged: the base snapshot's rows and the rows read, both in key order,
+     *  become one list of rows in key order, where a row read replaces the base row with the same key.
+     */
+    private static final class Merged {
+        // For every merged row: the base row it comes from, or -1 - the row read it comes from
+        final int[] sources;
+        // For every base row: the merged row with its key, which is the row that replaced it if it was read again
+        final int[] baseToMerged;
+
+        /**
+         * @param readRows rows read, one per key, in key order
+         */
+        Merged(int baseCount, RowKey baseKey, int[] readRows, RowKey readKey) {
+            int[] sources = new int[baseCount + readRows.length];
+            baseToMerged = new int[baseCount];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < baseCount || j < readRows.length) {
+                if (j == readRows.length || (i < baseCount && baseKey.key(i) < readKey.key(readRows[j]))) {
+                    baseToMerged[i] = n;
+                    sources[n++] = i++;
+                } else {
+                    if (i < baseCount && baseKey.key(i) == readKey.key(readRows[j])) {
+                        baseToMerged[i++] = n;
+                    }
+                    sources[n++] = -1 - readRows[j++];
+                }
+            }
+            this.sources = Arrays.copyOf(sources, n);
+        }
+
+        int[] pick(int[] base, IntColumn read) {
+            int[] merged = new int[sources.length];
+            for (int row = 0; row < merged.length; row++) {
+                merged[row] = sources[row] >= 0 ? base[sources[row]] : read.values[-1 - sources[row]];
+            }
+            return merged;
+        }
+
+        long[] pick(long[] base, LongColumn read) {
+            long[] merged = new long[sources.length];
+            for (int row = 0; row < merged.length; row++) {
+                merged[row] = sources[row] >= 0 ? base[sources[row]] : read.values[-1 - sources[row]];
+            }
+            return merged;
+        }
+
+        short[] pickShorts(short[] base, IntColumn read) {
+            short[] merged = new short[sources.length];
+            for (int row = 0; row < merged.length; row++) {
+                merged[row] = sources[row] >= 0 ? base[sources[row]] : (short) read.values[-1 - sources[row]];
+            }
+            return merged;
+        }
+
+        /**
+         * Carry an order of the base rows over to the merged rows: the base rows that were not read again keep
+         *  their order, and the rows read are sorted and each inserted at the place a binary search finds.
+         * @param baseOrder the base rows in the order
+         * @param order compares merged rows
+         * @return the merged rows in the order
+         */
+        int[] mergeOrder(int[] baseOrder, RowOrder order) {
+            int[] kept = new int[baseOrder.length];
+            int k = 0;
+            for (int row : baseOrder) {
+                int merged = baseToMerged[row];
+                if (sources[merged] >= 0) {
+                    kept[k++] = merged;
+                }
+            }
+            int[] read = new int[sources.length - k];
+            int r = 0;
+            for (int row = 0; row < sources.length; row++) {
+                if (sources[row] < 0) {
+                    read[r++] = row;
+                }
+            }
+            sort(read, order);
+
+            int[] rows = new int[sources.length];
+            int n = 0;
+            int from = 0;
+            for (int row : read) {
+                // The first kept row that sorts after the row read
+                int low = from;
+                int high = k;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (order.compare(kept[mid], row) <= 0) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                System.arraycopy(kept, from, rows, n, low - from);
+                n += low - from;
+                from = low;
+                rows[n++] = row;
+            }
+            System.arraycopy(kept, from, rows, n, k - from);
+            return rows;
+        }
+    }
+
+    /**
+     * The collation order of the strings of a dictionary: the codes sorted by collation key, and the rank of every
+     *  code in that order, where strings the collator finds equal share a rank and the ranks are consecutive from 0.
+     *  NULL (code -1) ranks -1, before every string.
+     * Keys are compared as byte arrays, which is much cheaper than comparing the strings with the collator and gives
+     *  the same result. Ranks for a refreshed snapshot start from those of its base, whose dictionary has the same
+     *  codes: only the strings added since are sorted, and each is inserted into the base order by binary search.
+     * Only dictionaries that are searched by name keep the key of every code, so rankOf() can compare the key of
+     *  the name searched for with them; the others make keys while they are built and drop them afterwards.
+     */
+    private static final class CollationRanks {
+        // Returned by rankOf() for a string that no code is equal to
+        static final int NO_RANK = Integer.MIN_VALUE;
+
+        // The key of every code, or null if the dictionary is not searched
+        private final CollationKey[] keys;
+        private final int[] codesByKey;
+        private final int[] ranks;
+
+        /**
+         * @param searchable whether rankOf() will be called, which needs the key of every code to be kept
+         */
+        CollationRanks(StringDictionary dictionary, CollationRanks base, boolean searchable) {
+            int size = dictionary.size();
+            int baseSize = base == null ? 0 : base.ranks.length;
+            Collator collator = COLLATOR.get();
+            CollationKey[] keys = base != null && base.keys != null ? Arrays.copyOf(base.keys, size) : new CollationKey[size];
+            int[] added = new int[size - baseSize];
+            for (int code = baseSize; code < size; code++) {
+                keys[code] = collator.getCollationKey(dictionary.decode(code));
+                added[code - baseSize] = code;
+            }
+            sort(added, (x, y) -> keys[x].compareTo(keys[y]));
+
+            int[] baseCodes = base == null ? new int[0] : base.codesByKey;
+            codesByKey = new int[size];
+            int n = 0;
+            int from = 0;
+            for (int code : added) {
+                // The first base code that sorts after the added one
+                int low = from;
+                int high = baseCodes.length;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (key(keys, dictionary, collator, baseCodes[mid]).compareTo(keys[code]) <= 0) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                System.arraycopy(baseCodes, from, codesByKey, n, low - from);
+                n += low - from;
+                from = low;
+                codesByKey[n++] = code;
+            }
+            System.arraycopy(baseCodes, from, codesByKey, n, baseCodes.length - from);
+
+            ranks = new int[size];
+            int rank = -1;
+            for (n = 0; n < size; n++) {
+                int code = codesByKey[n];
+                boolean same;
+                if (n == 0) {
+                    same = false;
+                } else if (code < baseSize && codesByKey[n - 1] < baseSize) {
+                    // Two base codes next to each other were next to each other in the base too
+                    same = base.ranks[code] == base.ranks[codesByKey[n - 1]];
+                } else {
+                    same = key(keys, dictionary, collator, code)
+                            .compareTo(key(keys, dictionary, collator, codesByKey[n - 1])) == 0;
+                }
+                if (!same) {
+                    rank++;
+                }
+                ranks[code] = rank;
+            }
+            this.keys = searchable ? keys : null;
+        }
+
+        private static CollationKey key(CollationKey[] keys, StringDictionary dictionary, Collator collator, int code) {
+            CollationKey key = keys[code];
+            if (key == null) {
+                key = collator.getCollationKey(dictionary.decode(code));
+                keys[code] = key;
+            }
+            return key;
+        }
+
+        int rank(int code) {
+            return code < 0 ? -1 : ranks[code];
+        }
+
+        /**
+         * @return the rank of the strings equal to 'value' (-1 for NULL), or NO_RANK if there are none
+         */
+        int rankOf(String value) {
+            if (value == null) {
+                return -1;
+            }
+            CollationKey key = COLLATOR.get().getCollationKey(value);
+            int low = 0;
+            int high = codesByKey.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int c = keys[codesByKey[mid]].compareTo(key);
+                if (c < 0) {
+                    low = mid + 1;
+                } else if (c > 0) {
+                    high = mid - 1;
+                } else {
+                    return ranks[codesByKey[mid]];
+                }
+            }
+            return NO_RANK;
+        }
+
+        long estimatedBytes() {
+            long bytes = 4L * 2 * ranks.length;
+            if (keys != null) {
+                for (CollationKey key : keys) {
+                    // The key object and the String of collation elements it holds
+                    bytes += 16 + 24 + 16 + 2L * key.getSourceString().length();
+                }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * A growable int array.
+     */
+    private static final class IntColumn {
+        int[] values = new int[64];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * A growable long array.
+     */
+    private static final class LongColumn {
+        long[] values = new long[64];
+        int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+// Import SQL package
+import java.sql.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads whole tables as lazy streams of records, without holding the result set in memory.
+ *
+ * The queries run on forward-only, read-only statements with a fetch size, so the driver fetches
+ *  'fetchSize' rows at a time from a server-side cursor (with MySQL this needs useCursorFetch=true,
+ *  which JDBC.DB_URL sets). Rows are mapped to records one at a time as the stream is consumed.
+ *
+ * The returned streams hold an open statement and result set: close them, e.g. with try-with-resources.
+ *  The connection must stay open, and should not run other statements, until the stream is closed.
+ */
+public class CatalogStreams {
+
+    static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final Connection conn;
+    private final int fetchSize;
+
+    /**
+     * @param conn the connection the tables are read through
+     * @param fetchSize the number of rows fetched from the server per round trip
+     */
+    public CatalogStreams(Connection conn, int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetchSize must be at least 1: " + fetchSize);
+        }
+        this.conn = conn;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @return every row of the 'titles' table
+     */
+    public Stream<Title> titles() throws SQLException {
+        return stream(SQL.SELECT_TITLES, CatalogQueries::readTitle);
+    }
+
+    /**
+     * @return every row of the 'authorISBN' table
+     */
+    public Stream<AuthorISBN> authorISBNs() throws SQLException {
+        return stream(SQL.SELECT_AUTHOR_ISBNS, rs -> new AuthorISBN(rs.getInt("authorID"), rs.getString("isbn")));
+    }
+
+    /**
+     * @return every row of the 'authors' table, ordered by last name and then first name
+     */
+    public Stream<Author> authorsByLastName() throws SQLException {
+        return stream(SQL.SELECT_AUTHORS_BY_LAST_NAME, CatalogQueries::readAuthor);
+    }
+
+    /**
+     * Run a query and return its rows as a lazy stream.
+     * An SQLException thrown while the stream is consumed is rethrown as an UncheckedSQLException.
+     */
+    <T> Stream<T> stream(String sql, RowMapper<T> mapper) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ResultSet rs;
+        try {
+            ps.setFetchSize(fetchSize);
+            rs = ps.executeQuery();
+        } catch (SQLException e) {
+            ps.close();
+            throw e;
+        }
+        Iterator<T> rows = new Iterator<T>() {
+            private boolean ready;
+            private boolean more;
+
+            @Override
+            public boolean hasNext() {
+                if (!ready) {
+                    try {
+                        more = rs.next();
+                    } catch (SQLException e) {
+                        throw new UncheckedSQLException(e);
+                    }
+                    ready = true;
+                }
+                return more;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ready = false;
+                try {
+                    return mapper.map(rs);
+                } catch (SQLException e) {
+                    throw new UncheckedSQLException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    // The statement is closed even if closing the result set fails
+                    SQLException failure = null;
+                    try {
+                        rs.close();
+                    } catch (SQLException e) {
+                        failure = e;
+                    }
+                    try {
+                        ps.close();
+                    } catch (SQLException e) {
+                        if (failure == null) {
+                            failure = e;
+                        } else {
+                            failure.addSuppressed(e);
+                        }
+                    }
+                    if (failure != null) {
+                        throw new UncheckedSQLException(failure);
+                    }
+                });
+    }
+
+    /**
+     * Maps the current row of a result set to a record.
+     */
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * An SQLException thrown while a stream was being consumed.
+     */
+    public static class UncheckedSQLException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public UncheckedSQLException(SQLException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+}
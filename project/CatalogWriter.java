@@ -0,0 +1,125 @@
+// Import SQL package
+import java.math.BigDecimal;
+import java.sql.*;
+
+/**
+ * Changes authors, publishers and titles and invalidates the CatalogCache entries each change affects.
+ * All catalog writes that can change a cached lookup should go through this class.
+ */
+public class CatalogWriter {
+
+    private final Connection conn;
+    private final CatalogCache cache;
+
+    /**
+     * @param conn the connection the changes are made on
+     * @param cache the cache to keep consistent with the changes
+     */
+    public CatalogWriter(Connection conn, CatalogCache cache) {
+        this.conn = conn;
+        this.cache = cache;
+    }
+
+    /**
+     * Insert a new author.
+     * @return the generated authorID
+     */
+    public int addAuthor(String firstName, String lastName) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SQL.INSERT_AUTHOR, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, firstName);
+            ps.setString(2, lastName);
+            ps.executeUpdate();
+            cache.invalidateAuthor(firstName, lastName);
+            return generatedKey(ps);
+        }
+    }
+
+    /**
+     * Change the first name of every author with the given first name.
+     * @return the number of authors changed
+     */
+    public int updateAuthorFirstName(String oldFirstName, String newFirstName) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SQL.UPDATE_AUTHOR_FIRST_NAME)) {
+            ps.setString(1, newFirstName);
+            ps.setString(2, oldFirstName);
+            int updated = ps.executeUpdate();
+            cache.invalidateAuthorsNamed(oldFirstName);
+            cache.invalidateAuthorsNamed(newFirstName);
+            return updated;
+        }
+    }
+
+    /**
+     * Insert a new publisher.
+     * @return the generated publisherID
+     */
+    public int addPublisher(String publisherName) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SQL.INSERT_PUBLISHER, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, publisherName);
+            ps.executeUpdate();
+            cache.invalidatePublisher(publisherName);
+            return generatedKey(ps);
+        }
+    }
+
+    /**
+     * Rename every publisher with the given name.
+     * @return the number of publishers changed
+     */
+    public int renamePublisher(String oldName, String newName) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SQL.UPDATE_PUBLISHER_NAME)) {
+            ps.setString(1, newName);
+            ps.setString(2, oldName);
+            int updated = ps.executeUpdate();
+            cache.invalidatePublisher(oldName);
+            cache.invalidatePublisher(newName);
+            return updated;
+        }
+    }
+
+    /**
+     * Insert a new title by an existing author, together with its 'authorISBN' row, in one transaction.
+     * @param year the publication year
+     * @throws SQLException if there is no publisher or author with the given name; nothing is inserted then
+     */
+    public void addTitle(String isbn, String title, int editionNumber, int year, String publisherName,
+                         BigDecimal price, String authorFirstName, String authorLastName) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement insertTitle = conn.prepareStatement(SQL.INSERT_TITLE_OF_PUBLISHER);
+             PreparedStatement insertAuthorISBN = conn.prepareStatement(SQL.INSERT_AUTHOR_ISBN_OF_AUTHOR)) {
+            insertTitle.setString(1, isbn);
+            insertTitle.setInt(2, editionNumber);
+            insertTitle.setShort(3, (short) year);
+            insertTitle.setBigDecimal(4, price);
+            insertTitle.setString(5, title);
+            insertTitle.setString(6, publisherName);
+            if (insertTitle.executeUpdate() == 0) {
+                throw new SQLException("Unknown publisher: " + publisherName);
+            }
+            insertAuthorISBN.setString(1, isbn);
+            insertAuthorISBN.setString(2, authorFirstName);
+            insertAuthorISBN.setString(3, authorLastName);
+            if (insertAuthorISBN.executeUpdate() == 0) {
+                throw new SQLException("Unknown author: " + authorFirstName + " " + authorLastName);
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        cache.invalidatePublisher(publisherName);
+        cache.invalidateAuthor(authorFirstName, authorLastName);
+    }
+
+    private static int generatedKey(PreparedStatement ps) throws SQLException {
+        try (ResultSet keys = ps.getGeneratedKeys()) {
+            if (!keys.next()) {
+                throw new SQLException("No generated key returned");
+            }
+            return keys.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,435 @@
+// Import SQL package
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * A small pool of JDBC connections exposed as a DataSource.
+ *
+ * Connections are opened with DriverManager, so any JDBC 4 driver on the class path works,
+ *  including an embedded database for offline testing (e.g. -Ddb.url=jdbc:h2:mem:BOOKS;MODE=MySQL).
+ * Calling close() on a borrowed connection returns it to the pool instead of closing it.
+ *
+ * - At most 'maxSize' connections are open at once; borrowers wait up to 'borrowTimeoutMillis' for one.
+ * - Idle connections are validated with Connection.isValid() before they are handed out.
+ * - A background thread closes connections that have been idle longer than 'idleTimeoutMillis',
+ *   keeping at least 'minSize' open, and reports connections borrowed for longer than
+ *   'leakThresholdMillis' (0 turns the reports off) together with the stack of the borrowing thread.
+ *   Recording the stack trace of the code that borrowed each connection costs a stack walk per
+ *   borrow, so it is only done when 'captureBorrowStacks' is set; otherwise the report shows where
+ *   the borrowing thread is at the time of the report.
+ * - Statements created through a borrowed connection and still open when it is returned are closed,
+ *   so a borrower that forgets one does not leave it open on the pooled connection.
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+
+    static final int DEFAULT_MIN_SIZE = 1;
+    static final int DEFAULT_MAX_SIZE = 10;
+    static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 30_000;
+    static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 600_000;
+    static final long DEFAULT_LEAK_THRESHOLD_MILLIS = 60_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    // Time spent waiting for, validating or opening a connection in getConnection()
+    private static final QueryMetrics ACQUIRE = Metrics.query("pool.acquire");
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final boolean captureBorrowStacks;
+
+    // Most recently returned connections are handed out first, so rarely needed ones go idle and get evicted
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    /**
+     * @param url the JDBC url of the database
+     * @param user the database user
+     * @param password the database password
+     * @param minSize the number of connections kept open even when idle
+     * @param maxSize the maximum number of open connections
+     * @param borrowTimeoutMillis how long getConnection() waits for a free connection
+     * @param idleTimeoutMillis how long a connection may stay idle before it is closed
+     * @param leakThresholdMillis how long a connection may be borrowed before it is reported as a leak
+     */
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis) {
+        this(url, user, password, minSize, maxSize, borrowTimeoutMillis, idleTimeoutMillis, leakThresholdMillis, false);
+    }
+
+    /**
+     * @param leakThresholdMillis how long a connection may be borrowed before it is reported as a leak, 0 for never
+     * @param captureBorrowStacks whether to record the stack trace of every borrow for the leak reports
+     */
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis,
+                          boolean captureBorrowStacks) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min " + minSize + ", max " + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.captureBorrowStacks = captureBorrowStacks && leakThresholdMillis > 0;
+        this.permits = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1_000, (leakThresholdMillis > 0 ? Math.min(idleTimeoutMillis, leakThresholdMillis) : idleTimeoutMillis) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a pool configured by the properties db.url, db.user, db.password, pool.minSize,
+     *  pool.maxSize, pool.borrowTimeoutMillis, pool.idleTimeoutMillis, pool.leakThresholdMillis and
+     *  pool.captureBorrowStacks.
+     * Missing properties fall back to the MySQL settings in JDBC.java and the defaults of this class.
+     */
+    public static ConnectionPool fromProperties(Properties props) {
+        return new ConnectionPool(
+                props.getProperty("db.url", JDBC.DB_URL),
+                props.getProperty("db.user", JDBC.USER),
+                props.getProperty("db.password", JDBC.PASS),
+                Integer.parseInt(props.getProperty("pool.minSize", String.valueOf(DEFAULT_MIN_SIZE))),
+                Integer.parseInt(props.getProperty("pool.maxSize", String.valueOf(DEFAULT_MAX_SIZE))),
+                Long.parseLong(props.getProperty("pool.borrowTimeoutMillis", String.valueOf(DEFAULT_BORROW_TIMEOUT_MILLIS))),
+                Long.parseLong(props.getProperty("pool.idleTimeoutMillis", String.valueOf(DEFAULT_IDLE_TIMEOUT_MILLIS))),
+                Long.parseLong(props.getProperty("pool.leakThresholdMillis", String.valueOf(DEFAULT_LEAK_THRESHOLD_MILLIS))),
+                Boolean.parseBoolean(props.getProperty("pool.captureBorrowStacks", "false")));
+    }
+
+    /**
+     * Borrow a connection, opening a new one if no idle connection is available.
+     * The caller must close() it to give it back.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Connection conn = borrow();
+            ACQUIRE.record(start, 0);
+            return conn;
+        } catch (SQLException | RuntimeException e) {
+            ACQUIRE.error();
+            throw e;
+        }
+    }
+
+    private Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + borrowTimeoutMillis + " ms waiting for a connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isValid(pooled.raw)) {
+                    return lease(pooled);
+                }
+                closeQuietly(pooled.raw);
+            }
+            return lease(new PooledConnection(DriverManager.getConnection(url, user, password)));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections all use the pool's credentials");
+    }
+
+    /**
+     * @return the number of connections currently borrowed
+     */
+    public int activeCount() {
+        return leases.size();
+    }
+
+    /**
+     * @return the number of open connections waiting in the pool
+     */
+    public int idleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Close every idle connection and stop the housekeeping thread.
+     * Borrowed connections are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            closeQuietly(pooled.raw);
+        }
+    }
+
+    private Connection lease(PooledConnection pooled) {
+        Lease lease = new Lease(pooled);
+        leases.add(lease);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, lease);
+    }
+
+    /**
+     * Take a returned connection back into the pool, resetting any state the borrower changed.
+     */
+    private void release(Lease lease) {
+        leases.remove(lease);
+        PooledConnection pooled = lease.pooled;
+        lease.closeStatements();
+        try {
+            if (closed || pooled.raw.isClosed()) {
+                closeQuietly(pooled.raw);
+                return;
+            }
+            if (!pooled.raw.getAutoCommit()) {
+                pooled.raw.rollback();
+                pooled.raw.setAutoCommit(true);
+            }
+            pooled.raw.setReadOnly(false);
+            pooled.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            closeQuietly(pooled.raw);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Evict connections idle for too long, top the pool back up to its minimum size and report leaks.
+     */
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        // Idle connections are ordered most recently used first, so the stalest ones are at the end
+        PooledConnection pooled;
+        while (idle.size() + leases.size() > minSize
+                && (pooled = idle.peekLast()) != null
+                && now - pooled.lastUsed > idleTimeoutMillis) {
+            if (idle.removeLastOccurrence(pooled)) {
+                closeQuietly(pooled.raw);
+            }
+        }
+        while (!closed && idle.size() + leases.size() < minSize && permits.tryAcquire()) {
+            try {
+                idle.offerLast(new PooledConnection(DriverManager.getConnection(url, user, password)));
+            } catch (SQLException e) {
+                e.printStackTrace();
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+        if (leakThresholdMillis <= 0) {
+            return;
+        }
+        for (Lease lease : leases) {
+            if (!lease.reported && now - lease.borrowedAt > leakThresholdMillis) {
+                lease.reported = true;
+                System.err.println("Possible connection leak: connection borrowed by " + lease.borrower.getName()
+                        + " has not been returned after " + (now - lease.borrowedAt) + " ms");
+                if (lease.borrowedFrom != null) {
+                    lease.borrowedFrom.printStackTrace();
+                } else {
+                    // Without -Dpool.captureBorrowStacks=true only the borrower's current position is known
+                    Throwable current = new Throwable("Borrowing thread is currently here");
+                    current.setStackTrace(lease.borrower.getStackTrace());
+                    current.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static boolean isValid(Connection conn) {
+        try {
+            return conn.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            // The connection is being discarded anyway
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return DriverManager.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        DriverManager.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        DriverManager.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return DriverManager.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private static final class PooledConnection {
+        final Connection raw;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+        }
+    }
+
+    /**
+     * One borrowing of a pooled connection; handles the calls made on the proxy given to the borrower.
+     */
+    private final class Lease implements InvocationHandler {
+        // Open statements are pruned from 'statements' once it grows to this size
+        private static final int PRUNE_STATEMENTS_AT = 64;
+
+        final PooledConnection pooled;
+        final long borrowedAt = System.currentTimeMillis();
+        final Thread borrower = Thread.currentThread();
+        // The borrower's stack, so a leak report shows where the connection was taken; null unless captureBorrowStacks
+        final Throwable borrowedFrom = captureBorrowStacks ? new Throwable("Connection borrowed here") : null;
+        volatile boolean reported;
+        private boolean returned;
+        // Statements created through this lease, closed when it is returned
+        private final List<Statement> statements = new ArrayList<>();
+        private int pruneAt = PRUNE_STATEMENTS_AT;
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        synchronized void track(Statement statement) throws SQLException {
+            if (statements.size() >= pruneAt) {
+                // Drop the statements the borrower has closed, so a long lease does not hold on to them all
+                List<Statement> open = new ArrayList<>();
+                for (Statement s : statements) {
+                    if (!s.isClosed()) {
+                        open.add(s);
+                    }
+                }
+                statements.clear();
+                statements.addAll(open);
+                pruneAt = Math.max(PRUNE_STATEMENTS_AT, statements.size() * 2);
+            }
+            statements.add(statement);
+        }
+
+        synchronized void closeStatements() {
+            for (Statement statement : statements) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    // Closing a statement twice is allowed, and a broken connection is discarded anyway
+                }
+            }
+            statements.clear();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (!returned) {
+                            returned = true;
+                            release(this);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    synchronized (this) {
+                        return returned || pooled.raw.isClosed();
+                    }
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + pooled.raw;
+                default:
+                    synchronized (this) {
+                        if (returned) {
+                            throw new SQLException("Connection has been returned to the pool");
+                        }
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(pooled.raw, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (result instanceof Statement) {
+                        track((Statement) result);
+                    }
+                    return result;
+            }
+        }
+    }
+}
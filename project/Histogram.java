@@ -0,0 +1,109 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative long values (latencies in nanoseconds, batch sizes, ...)
+ *  with log-linear buckets, in the style of an HdrHistogram.
+ *
+ * Values below 2 * SUB_BUCKETS get a bucket each. Above that, every power of two is split into
+ *  SUB_BUCKETS buckets of equal width, so a recorded value is off by at most 1 / SUB_BUCKETS
+ *  (about 3%) whatever its magnitude, and the whole long range fits in a fixed array of counters.
+ * Recording is a bucket computation and three atomic additions, with no locks or allocation,
+ *  so it can stay on in hot paths. Quantiles are computed from a copy of the counters.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Enough buckets for values up to Long.MAX_VALUE, whose highest set bit is bit 62
+    private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record one value; negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0 : (double) sum() / n;
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.99
+     * @return the highest value in the bucket that holds the given quantile, or 0 if nothing was recorded
+     */
+    public long quantile(double quantile) {
+        return quantiles(quantile)[0];
+    }
+
+    /**
+     * Compute several quantiles from one pass over the same copy of the counters.
+     * @param quantiles between 0 and 1, in increasing order
+     */
+    public long[] quantiles(double... quantiles) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long[] values = new long[quantiles.length];
+        if (total == 0) {
+            return values;
+        }
+        long highest = max();
+        int bucket = 0;
+        long seen = snapshot[0];
+        for (int q = 0; q < quantiles.length; q++) {
+            long rank = Math.max(1, (long) Math.ceil(quantiles[q] * total));
+            while (seen < rank && bucket < BUCKETS - 1) {
+                seen += snapshot[++bucket];
+            }
+            values[q] = Math.min(highestInBucket(bucket), highest);
+        }
+        return values;
+    }
+
+    static int bucket(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long highestInBucket(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.Arrays;
+
+/**
+ * An immutable multimap from the int keys 0 .. keys - 1 to lists of ints, stored without boxing as two
+ *  int arrays in compressed sparse row form: the values of key k are values[offsets[k]] up to, but not
+ *  including, values[offsets[k + 1]]. A key with no values takes one int, a value takes one int.
+ */
+final class IntMultimap {
+
+    private final int[] offsets;
+    private final int[] values;
+
+    private IntMultimap(int[] offsets, int[] values) {
+        this.offsets = offsets;
+        this.values = values;
+    }
+
+    /**
+     * Build the multimap from 'count' (key, value) pairs. The values of every key keep the order in which
+     *  their pairs are given, so pairs listed in the order the values should have need no sorting.
+     */
+    static IntMultimap of(int keys, int[] pairKeys, int[] pairValues, int count) {
+        int[] offsets = new int[keys + 1];
+        for (int i = 0; i < count; i++) {
+            offsets[pairKeys[i] + 1]++;
+        }
+        for (int k = 0; k < keys; k++) {
+            offsets[k + 1] += offsets[k];
+        }
+        int[] next = Arrays.copyOf(offsets, keys);
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[next[pairKeys[i]]++] = pairValues[i];
+        }
+        return new IntMultimap(offsets, values);
+    }
+
+    /**
+     * @return the index in values() of the first value of the key
+     */
+    int start(int key) {
+        return offsets[key];
+    }
+
+    /**
+     * @return the index in values() just past the last value of the key
+     */
+    int end(int key) {
+        return offsets[key + 1];
+    }
+
+    int value(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return values.length;
+    }
+}
@@ -1,11 +1,16 @@
 // Import SQL package
+import com.sun.net.httpserver.HttpServer;
 import java.sql.*;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 public class JDBC {
 
     // JDBC driver name and database URL
     static final String JDBC_DRIVER = "com.mysql.jdbc.Driver";
-    static final String DB_URL = "jdbc:mysql://localhost:3306/BOOKS";
+    // rewriteBatchedStatements lets the MySQL driver send each batch as multi-row inserts;
+    // useCursorFetch makes statements with a fetch size read from a server-side cursor (see CatalogStreams)
+    static final String DB_URL = "jdbc:mysql://localhost:3306/BOOKS?rewriteBatchedStatements=true&useCursorFetch=true";
 
     //  Database credentials
     static final String USER = "root";
@@ -13,100 +18,114 @@ public class JDBC {
 
     // NOTE: For our project, we set up a MySQL server on our local machine with
     //       the credentials "root" and "password" as the user and password, respectively.
+    //       Another database can be used by setting -Ddb.url, -Ddb.user and -Ddb.password
+    //       (see ConnectionPool.fromProperties).
     public static void main(String[] args) {
+        ConnectionPool pool = null;
+        HttpServer metricsServer = null;
         Connection conn = null;
         Statement stmt = null;
+        CatalogQueries queries = null;
         try {
-            // Register JDBC driver
-            Class.forName("com.mysql.jdbc.Driver");
-
-            // Open a connection
+            // Borrow a connection from the pool; JDBC 4 drivers register themselves with DriverManager
             System.out.println("Connecting to database...");
-            conn = DriverManager.getConnection(DB_URL, USER, PASS);
+            // -Dmetrics.jmx=true and -Dmetrics.port=<port> publish the query metrics while the program runs
+            metricsServer = Metrics.configure(System.getProperties());
+            pool = ConnectionPool.fromProperties(System.getProperties());
+            conn = pool.getConnection();
 
             // Create statement from connection
             System.out.println("Creating statement...");
             stmt = conn.createStatement();
 
 
-            // We want to drop previously created tables because we are creating tables every time we run the program.
-            System.out.println("Creating tables & triggers");
-            stmt.executeUpdate(SQL.DROP_TABLES);
-            stmt.execute(SQL.CREATE_AUTHORS_TABLE);
-            stmt.execute(SQL.CREATE_PUBLISHERS_TABLE);
-            stmt.execute(SQL.CREATE_TITLES_TABLE);
-            stmt.execute(SQL.CREATE_AUTHOR_ISBN_TABLE);
-            // Create triggers for authors and authorISBN tables
-            stmt.execute(SQL.CREATE_TRIGGER_DELETE_AUTHOR);
-            stmt.execute(SQL.CREATE_TRIGGER_DELETE_AUTHOR_ISBN);
+            // The tables are kept between runs and only created or migrated when the schema is out of date.
+            // -Ddb.reset=true drops them first, to start again from an empty catalog.
+            if (Boolean.getBoolean("db.reset")) {
+                System.out.println("Dropping tables");
+                stmt.executeUpdate(SQL.DROP_TABLES);
+            }
+            SchemaMigrator migrator = new SchemaMigrator(conn);
+            System.out.println("Schema version " + migrator.migrate());
 
             //** Refer to the SQL.java class for detailed descriptions on the SQL statements **
 
-            // Insert authors data
-            for (int i = 0; i < SQL.INSERT_INTO_AUTHORS.length; i++) {
-                stmt.executeUpdate(SQL.INSERT_INTO_AUTHORS[i]);
-            }
-            // Insert publishers data
-            for (int i = 0; i < SQL.INSERT_INTO_PUBLISHERS.length; i++) {
-                stmt.executeUpdate(SQL.INSERT_INTO_PUBLISHERS[i]);
+            boolean needsSeed = migrator.isEmpty("authors");
+            if (needsSeed) {
+                // Insert the seed data in batches, one transaction per batch
+                BulkLoader loader = new BulkLoader(conn, BulkLoader.DEFAULT_BATCH_SIZE);
+                loader.loadAuthors(Arrays.asList(SQL.AUTHORS));
+                loader.loadPublishers(Arrays.asList(SQL.PUBLISHERS));
+                loader.loadTitles(Arrays.asList(SQL.TITLES));
+                loader.loadAuthorISBNs(Arrays.asList(SQL.AUTHOR_ISBNS));
+                System.out.println("\nLoaded seed data");
+                loader.printReport();
+            } else {
+                System.out.println("Catalog already loaded, skipping the seed data");
             }
-            // Insert titles data
-            for (int i = 0; i < SQL.INSERT_INTO_TITLE.length; i++) {
-                stmt.executeUpdate(SQL.INSERT_INTO_TITLE[i]);
-            }
-            // Insert authorISBN data
-            for (int i = 0; i < SQL.INSERT_INTO_AUTHOR_ISBN.length; i++) {
-                stmt.executeUpdate(SQL.INSERT_INTO_AUTHOR_ISBN[i]);
+
+            queries = new CatalogQueries(conn);
+            // Publisher and author lookups are cached; every change below goes through the write-behind queue,
+            // which commits the changes in groups and invalidates the cached lookups they affect
+            CatalogCache cache = new CatalogCache(pool);
+            WriteBehindQueue mutations = new WriteBehindQueue(pool, cache,
+                    WriteBehindQueue.DEFAULT_MAX_BATCH_SIZE, WriteBehindQueue.DEFAULT_MAX_DELAY_MILLIS);
+
+            // -Dcatalog.snapshot=true answers the queries below from an in-memory CatalogSnapshot of the catalog
+            // instead of the database, and refreshes it after the changes
+            CatalogSnapshot snapshot = null;
+            if (Boolean.getBoolean("catalog.snapshot")) {
+                snapshot = CatalogSnapshot.load(conn);
+                System.out.println("\nLoaded snapshot: " + snapshot);
             }
 
             System.out.println("\nQUERY: Printing all authors by last name");
-            printAuthorsByLastName(stmt);
+            CatalogPrinter.printAuthors(System.out, snapshot != null ? snapshot.authorsByLastName() : queries.authorsByLastName());
 
             System.out.println("\nQUERY: Printing all publishers");
-            printAllPublishers(stmt);
-
-            System.out.println("\nQUERY: Printing all books published by Pearson");
-            printBooksByPublisher(stmt, "Pearson");
-
-            System.out.println("\nAdding new author with the name 'Johnny Bravo' into the authors table.");
-            String addAuthorSQL = "INSERT INTO authors (firstName, lastName) VALUES ('JOHNNY', 'BRAVO');\n";
-            stmt.executeUpdate(addAuthorSQL);
-
-            System.out.println("\nUpdating existing information about an author");
-            String updateAuthorSQL = "UPDATE authors SET firstName = 'Blah blah' WHERE firstName = 'Susan'";
-            stmt.executeUpdate(updateAuthorSQL);
-
-            System.out.println("\nAdd a new title for author 'Steven King'");
-            String addNewTitleForAuthorSQL = "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, Title) " +
-                                             "VALUES(" +
-                                                     "(SELECT isbn " +
-                                                     "FROM authorISBN " +
-                                                     "WHERE authorID = (SELECT authorID " +
-                                                                       "FROM authors " +
-                                                                       "WHERE firstName = 'Steven' " +
-                                                                         "AND lastName = 'King'))," +
-                                                     "1, \"2023\", 16, 10.11, \"New Book\");\n";
-
-            System.out.println("\nAdding new publisher");
-            String insertNewPublisherSql = "INSERT INTO publishers (publisherName) VALUES (\"New Publisher\");";
-            stmt.executeUpdate(insertNewPublisherSql);
+            CatalogPrinter.printPublishers(System.out, snapshot != null ? snapshot.allPublishers() : queries.allPublishers());
+
+            // The example changes below rename Pearson, so once they have been made its books are listed under the new name
+            String pearson = needsSeed ? "Pearson" : "New Publisher Name";
+            System.out.println("\nQUERY: Printing all books published by " + pearson);
+            CatalogPrinter.printBooks(System.out, snapshot != null ? snapshot.booksByPublisher(pearson) : cache.booksByPublisher(pearson));
+
+            // The example changes are made once, on the run that loads the seed data (the first run, or one with
+            // -Ddb.reset=true), so later runs do not add another Johnny Bravo and another New Publisher
+            if (needsSeed) {
+                changeCatalog(mutations);
+            } else {
+                System.out.println("\nThe example changes were made when the catalog was loaded, skipping them");
+            }
+            mutations.close();
+            if (snapshot != null) {
+                snapshot = snapshot.refresh(conn);
+                System.out.println("\nRefreshed snapshot: " + snapshot);
+            }
 
-            System.out.println("\nUpdate existing information about publisher");
-            String updatePublisherInfoSql = "UPDATE publishers SET publisherName = 'New Publisher Name' WHERE publisherName = 'Pearson'";
-            stmt.executeUpdate(updatePublisherInfoSql);
+            System.out.println("\nLookup cache statistics");
+            cache.printStats();
 
+            System.out.println("\nQuery metrics");
+            Metrics.printReport(System.out);
 
+            queries.close();
             stmt.close();
             conn.close();
         } catch (SQLException se) {
             //Handle errors for JDBC
             se.printStackTrace();
         } catch (Exception e) {
-            //Handle errors for Class.forName
+            //Handle any other errors
             e.printStackTrace();
         } finally {
             // By calling this in the finally block, we guarantee
             // that the statement and connection are closed.
+            try {
+                if (queries != null)
+                    queries.close();
+            } catch (SQLException se2) {
+            }
             try {
                 if (stmt != null)
                     stmt.close();
@@ -118,116 +137,59 @@ public class JDBC {
             } catch (SQLException se) {
                 se.printStackTrace();
             }
+            if (pool != null)
+                pool.close();
+            if (metricsServer != null)
+                metricsServer.stop(0);
         }
 
         System.out.println("Done.");
     }
 
-
-    /**
-     * Print all data in the authors table ordered by their last name
-     * @param stmt the statement object created from Connection.createStatement()
-     */
-    private static void printAuthorsByLastName(Statement stmt) throws SQLException {
-        String sql = "SELECT * FROM authors ORDER BY lastName, firstName ASC";
-        ResultSet resultSet = stmt.executeQuery(sql);
-        System.out.printf("%-9s| %-15s| %-12s\n", "authorID", "lastName", "firstName");
-        System.out.println("---------------------------------------------------");
-        while(resultSet.next()){
-            //Retrieve by column name
-            int authorID  = resultSet.getInt("authorID");
-            String last = resultSet.getString("lastName");
-            String first = resultSet.getString("firstName");
-            //Display values
-            System.out.printf("%-9s| %-15s| %-12s\n", authorID, last, first);
-        }
-        System.out.println();
-    }
-
     /**
-     * Print all data in the titles table
-     * @param stmt the statement object created from Connection.createStatement()
+     * Make the example changes to the seed data through the write-behind queue and wait until they are committed.
      */
-    private static void printTitles(Statement stmt) throws SQLException {
-        String sql = "SELECT * FROM titles";
-        ResultSet resultSet = stmt.executeQuery(sql);
-        //STEP 5: Extract data from result set
-        System.out.printf("%-13s| %-25s| %-14s| %-5s| %-12s| %-4s\n", "isbn", "title", "editionNumber", "year", "publisherID", "price");
-        System.out.println("----------------------------------------------------------------------------------------------------");
-        while(resultSet.next()){
-            //Retrieve by column name
-            String isbn  = resultSet.getString("isbn");
-            String title = resultSet.getString("title");
-            int editionNumber = resultSet.getInt("editionNumber");
-            String year = resultSet.getString("Year");
-            int publisherID = resultSet.getInt("publisherID");
-            float price = resultSet.getFloat("price");
-            //Display values
-            System.out.printf("%-13s| %-25s| %-14s| %-5s| %-12s| %-4s\n", isbn, title, editionNumber, year, publisherID, price);
-        }
-        System.out.println();
+    private static void changeCatalog(WriteBehindQueue mutations) {
+        System.out.println("\nAdding new author with the name 'Johnny Bravo' into the authors table.");
+        CompletableFuture<Integer> johnny = mutations.addAuthor("JOHNNY", "BRAVO");
+
+        System.out.println("\nUpdating existing information about an author");
+        CompletableFuture<Integer> susan = mutations.updateAuthorFirstName("Susan", "Blah blah");
+
+        System.out.println("\nAdd a new title for author 'Steven King'");
+        String addNewTitleForAuthorSQL = "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, Title) " +
+                                         "VALUES(" +
+                                                 "(SELECT isbn " +
+                                                 "FROM authorISBN " +
+                                                 "WHERE authorID = (SELECT authorID " +
+                                                                   "FROM authors " +
+                                                                   "WHERE firstName = 'Steven' " +
+                                                                     "AND lastName = 'King'))," +
+                                                 "1, \"2023\", 16, 10.11, \"New Book\");\n";
+
+        System.out.println("\nAdding new publisher");
+        CompletableFuture<Integer> publisher = mutations.addPublisher("New Publisher");
+
+        System.out.println("\nUpdate existing information about publisher");
+        CompletableFuture<Integer> pearson = mutations.renamePublisher("Pearson", "New Publisher Name");
+
+        // The four changes above share one commit; each future completes once it is durable
+        System.out.println("\nCommitted: author " + johnny.join() + " added, " + susan.join() + " author(s) updated, publisher "
+                           + publisher.join() + " added, " + pearson.join() + " publisher(s) renamed");
     }
 
     /**
-     * Print all publishers in the 'publishers' table
+     * Drop the catalog tables if they exist and create them again.
+     * Used by the benchmark and the query plan check, which need empty tables; JDBC.main keeps its tables
+     *  and lets SchemaMigrator bring them up to date instead.
+     * Deleting an author together with their titles is done by CascadeDeleteService, not by triggers.
      * @param stmt the statement object created from Connection.createStatement()
      */
-    private static void printAllPublishers(Statement stmt) throws SQLException {
-        String sql = "SELECT * FROM publishers";
-        ResultSet resultSet = stmt.executeQuery(sql);
-        System.out.printf("%-12s| %-15s\n", "publisherID", "publisherName");
-        System.out.println("-------------------------------------");
-        while(resultSet.next()){
-            //Retrieve by column name
-            int publisherID  = resultSet.getInt("publisherID");
-            String publisherName = resultSet.getString("publisherName");
-            //Display values
-            System.out.printf("%-12s| %-15s\n", publisherID, publisherName);
-        }
-        System.out.println();
-    }
-
-    /**
-     * Selects a specific publisher and prints all books published by that publisher.
-     * @param stmt the statement object created from Connection.createStatement()
-     * @param publisherName the specific publisher we want books published by
-     */
-    private static void printBooksByPublisher(Statement stmt, String publisherName) throws SQLException {
-        String publisherIdSql = "SELECT publisherID FROM publishers WHERE publisherName = \"" + publisherName + "\"";
-        ResultSet result = stmt.executeQuery(publisherIdSql);
-        System.out.printf("%-25s| %-5s| %-13s\n", "title", "year", "isbn");
-        System.out.println("----------------------------------------------------------------------------------------------------");
-        if (result.next()) {
-            final int publisherID = result.getInt("publisherID");
-            String booksSql = "SELECT title, year, isbn FROM titles WHERE publisherID = " + publisherID + " ORDER BY title ASC";
-            ResultSet booksResultSet = stmt.executeQuery(booksSql);
-            while(booksResultSet.next()){
-                //Retrieve by column name
-                String title = booksResultSet.getString("title");
-                String year = booksResultSet.getString("year");
-                String isbn = booksResultSet.getString("isbn");
-                //Display values
-                System.out.printf("%-25s| %-5s| %-13s\n", title, year, isbn);
-            }
-        }
-    }
-
-    /**
-     * Print all data in the authorsISBN table
-     * @param stmt the statement object created from Connection.createStatement()
-     */
-    private static void printAuthorISBNs(Statement stmt) throws SQLException {
-        String sql = "SELECT * FROM authorISBN";
-        ResultSet resultSet = stmt.executeQuery(sql);
-        System.out.printf("%-9s| %-13s\n", "authorID", "ISBN");
-        System.out.println("-------------------------------------");
-        while(resultSet.next()){
-            //Retrieve by column name
-            int authorID  = resultSet.getInt("authorID");
-            String isbn = resultSet.getString("isbn");
-            //Display values
-            System.out.printf("%-9s| %-13s\n", authorID, isbn);
-        }
-        System.out.println();
+    static void createTables(Statement stmt) throws SQLException {
+        stmt.executeUpdate(SQL.DROP_TABLES);
+        stmt.execute(SQL.CREATE_AUTHORS_TABLE);
+        stmt.execute(SQL.CREATE_PUBLISHERS_TABLE);
+        stmt.execute(SQL.CREATE_TITLES_TABLE);
+        stmt.execute(SQL.CREATE_AUTHOR_ISBN_TABLE);
     }
 }
\ No newline at end of file
@@ -0,0 +1,150 @@
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A size-bounded, least-recently-used read-through cache whose entries expire after a fixed time.
+ *
+ * Values are loaded outside the lock so a slow query does not block hits on other keys.
+ * Every invalidation bumps a generation counter, and a value loaded before an invalidation
+ *  is returned to its caller but not stored, so a cache that races with a write never keeps
+ *  the value from before the write.
+ *
+ * @param <K> the lookup key
+ * @param <V> the cached value
+ */
+public class LookupCache<K, V> {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    /**
+     * @param maxEntries the number of entries kept before the least recently used one is evicted
+     * @param ttlMillis how long an entry is served after it was loaded
+     */
+    public LookupCache(int maxEntries, long ttlMillis) {
+        if (maxEntries < 1 || ttlMillis < 0) {
+            throw new IllegalArgumentException("Invalid cache settings: maxEntries " + maxEntries + ", ttlMillis " + ttlMillis);
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        // Access order makes the eldest entry the least recently used one
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LookupCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cached value for the key, or the value returned by the loader if it is not cached or has expired
+     */
+    public V get(K key, Loader<K, V> loader) throws SQLException {
+        long loadGeneration;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (System.nanoTime() - entry.loadedAt < ttlNanos) {
+                    hits++;
+                    return entry.value;
+                }
+                entries.remove(key);
+                expirations++;
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+        V value = loader.load(key);
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                entries.put(key, new Entry<>(value, System.nanoTime()));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Remove the entry for one key.
+     */
+    public synchronized void invalidate(K key) {
+        generation++;
+        entries.remove(key);
+    }
+
+    /**
+     * Remove every entry whose key matches the filter.
+     */
+    public synchronized void invalidateIf(Predicate<? super K> filter) {
+        generation++;
+        Iterator<K> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (filter.test(keys.next())) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove every entry.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    public synchronized long evictionCount() {
+        return evictions;
+    }
+
+    public synchronized long expirationCount() {
+        return expirations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("size=%d, hits=%d, misses=%d, evictions=%d, expirations=%d",
+                entries.size(), hits, misses, evictions, expirations);
+    }
+
+    /**
+     * Loads the value for a key that is not in the cache.
+     */
+    public interface Loader<K, V> {
+        V load(K key) throws SQLException;
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long loadedAt;
+
+        Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentSkipListMap;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The registry of QueryMetrics, one per logical query, shared by the whole process.
+ *
+ * Instrumented classes look their metrics up once, into a static field, and record into them on
+ *  every call. The metrics can be read in three ways:
+ * - printReport() prints a table of every query,
+ * - enableJmx() registers every query as an MBean named "Catalog:type=QueryMetrics,name=<query>",
+ * - startHttpServer(port) serves them at http://localhost:<port>/metrics in the Prometheus text format.
+ */
+public class Metrics {
+
+    static final String JMX_DOMAIN = "Catalog";
+
+    // Sorted by name so reports and scrapes list the queries in a stable order
+    private static final Map<String, QueryMetrics> QUERIES = new ConcurrentSkipListMap<>();
+    private static volatile MBeanServer mbeanServer;
+
+    private Metrics() {
+    }
+
+    /**
+     * @return the metrics of the named query, created on first use
+     */
+    public static QueryMetrics query(String name) {
+        QueryMetrics metrics = QUERIES.get(name);
+        if (metrics == null) {
+            metrics = QUERIES.computeIfAbsent(name, QueryMetrics::new);
+            MBeanServer server = mbeanServer;
+            if (server != null) {
+                register(server, metrics);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Start the outputs requested by the properties metrics.jmx (true or false) and metrics.port.
+     * @return the metrics HTTP server, or null if metrics.port is not set; stop it when done
+     */
+    public static HttpServer configure(Properties props) throws IOException {
+        if (Boolean.parseBoolean(props.getProperty("metrics.jmx", "false"))) {
+            enableJmx();
+        }
+        String port = props.getProperty("metrics.port");
+        return port == null ? null : startHttpServer(Integer.parseInt(port));
+    }
+
+    /**
+     * Register every query, including those created later, with the platform MBean server.
+     */
+    public static synchronized void enableJmx() {
+        if (mbeanServer != null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        mbeanServer = server;
+        for (QueryMetrics metrics : QUERIES.values()) {
+            register(server, metrics);
+        }
+    }
+
+    private static void register(MBeanServer server, QueryMetrics metrics) {
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=QueryMetrics,name=" + ObjectName.quote(metrics.name()));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (InstanceAlreadyExistsException e) {
+            // Another thread registered the same query first
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Serve the metrics in the Prometheus text format at /metrics on the loopback interface.
+     * @param port the port to listen on, or 0 for any free port
+     */
+    public static HttpServer startHttpServer(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = prometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    /**
+     * @return every query's metrics in the Prometheus text exposition format
+     */
+    static String prometheusText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP catalog_query_seconds Latency of catalog queries, pool acquires and loader batches.\n");
+        sb.append("# TYPE catalog_query_seconds summary\n");
+        for (QueryMetrics metrics : QUERIES.values()) {
+            Histogram latency = metrics.latency();
+            long[] q = latency.quantiles(0.5, 0.9, 0.99, 0.999);
+            String label = "query=\"" + metrics.name() + "\"";
+            sample(sb, "catalog_query_seconds", label + ",quantile=\"0.5\"", q[0] / 1e9);
+            sample(sb, "catalog_query_seconds", label + ",quantile=\"0.9\"", q[1] / 1e9);
+            sample(sb, "catalog_query_seconds", label + ",quantile=\"0.99\"", q[2] / 1e9);
+            sample(sb, "catalog_query_seconds", label + ",quantile=\"0.999\"", q[3] / 1e9);
+            sample(sb, "catalog_query_seconds_sum", label, latency.sum() / 1e9);
+            sample(sb, "catalog_query_seconds_count", label, latency.count());
+        }
+        sb.append("# HELP catalog_query_rows_total Rows returned or changed by catalog queries.\n");
+        sb.append("# TYPE catalog_query_rows_total counter\n");
+        for (QueryMetrics metrics : QUERIES.values()) {
+            sample(sb, "catalog_query_rows_total", "query=\"" + metrics.name() + "\"", metrics.getRows());
+        }
+        sb.append("# HELP catalog_query_errors_total Catalog queries that failed.\n");
+        sb.append("# TYPE catalog_query_errors_total counter\n");
+        for (QueryMetrics metrics : QUERIES.values()) {
+            sample(sb, "catalog_query_errors_total", "query=\"" + metrics.name() + "\"", metrics.getErrors());
+        }
+        sb.append("# HELP catalog_batch_size Statements per executed batch.\n");
+        sb.append("# TYPE catalog_batch_size summary\n");
+        for (QueryMetrics metrics : QUERIES.values()) {
+            Histogram batches = metrics.batchSizes();
+            if (batches.count() == 0) {
+                continue;
+            }
+            long[] q = batches.quantiles(0.5, 0.99);
+            String label = "query=\"" + metrics.name() + "\"";
+            sample(sb, "catalog_batch_size", label + ",quantile=\"0.5\"", q[0]);
+            sample(sb, "catalog_batch_size", label + ",quantile=\"0.99\"", q[1]);
+            sample(sb, "catalog_batch_size_sum", label, batches.sum());
+            sample(sb, "catalog_batch_size_count", label, batches.count());
+        }
+        return sb.toString();
+    }
+
+    private static void sample(StringBuilder sb, String metric, String labels, double value) {
+        sb.append(metric).append('{').append(labels).append("} ");
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+        sb.append('\n');
+    }
+
+    /**
+     * Print the count, errors, rows and latencies (in milliseconds) of every query.
+     */
+    public static void printReport(PrintStream out) {
+        out.printf("%-22s| %-8s| %-7s| %-9s| %-9s| %-9s| %-9s| %-9s\n",
+                "query", "count", "errors", "rows", "mean ms", "p50 ms", "p99 ms", "max ms");
+        out.println("---------------------------------------------------------------------------------------------");
+        for (QueryMetrics metrics : QUERIES.values()) {
+            Histogram latency = metrics.latency();
+            long[] q = latency.quantiles(0.5, 0.99);
+            out.printf("%-22s| %-8d| %-7d| %-9d| %-9.3f| %-9.3f| %-9.3f| %-9.3f\n", metrics.name(),
+                    latency.count(), metrics.getErrors(), metrics.getRows(), latency.mean() / 1e6,
+                    q[0] / 1e6, q[1] / 1e6, latency.max() / 1e6);
+        }
+    }
+}
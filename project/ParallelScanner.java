@@ -0,0 +1,366 @@
+// Import SQL package
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import javax.sql.DataSource;
+
+/**
+ * Runs catalog-wide reports as parallel scans over key ranges.
+ *
+ * A table is split into ranges of a unique key, normally its primary key, and each range is read by its
+ *  own task on its own pooled connection. Each task folds its rows into a partial result, and the
+ *  partial results are merged on the client. The ranges should hold equal numbers of rows, but finding
+ *  exact bounds (e.g. with NTILE over the key) means reading the whole key in order before the scan starts,
+ *  and on InnoDB the primary key is the clustered index, so that is a serial read of the whole table.
+ *  The bounds are therefore chosen from the database's row estimates for parts of the key's value range,
+ *  which cost a few index dives each, since splitting the values into equal widths alone puts far more
+ *  rows in some ranges than others when the keys are not dense. (Splitting 'titles' on publisherID did
+ *  worse still: publishers are Zipf-distributed, so the first range held about half the rows.)
+ *  There are several ranges per thread so that a range that happens to be slow to read does not leave
+ *  the other threads idle at the end.
+ *
+ * The reports below let the database aggregate within each range (GROUP BY in the range query), so
+ *  only one row per group and range is transferred; groups that span ranges are merged afterwards.
+ */
+public class ParallelScanner {
+
+    static final int RANGES_PER_THREAD = 4;
+    // Keys are read as numbers of at most this many leading digits when their value range is split
+    private static final int MAX_KEY_DIGITS = 18;
+
+    private final DataSource dataSource;
+    private final ExecutorService executor;
+    private final int ranges;
+
+    /**
+     * @param dataSource where each range task borrows its connection; it should allow 'threads' connections
+     * @param executor runs the range tasks
+     * @param threads the number of ranges read at the same time
+     */
+    public ParallelScanner(DataSource dataSource, ExecutorService executor, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1: " + threads);
+        }
+        this.dataSource = dataSource;
+        this.executor = executor;
+        this.ranges = threads * RANGES_PER_THREAD;
+    }
+
+    /**
+     * Create an executor for tasks that block on JDBC calls: virtual threads when the runtime has them (Java 21
+     *  and later), otherwise a fixed pool of 'threads' platform threads. A fork-join pool is not used, since its
+     *  workers would block in the driver without the pool knowing and adding threads.
+     */
+    static ExecutorService newExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    /**
+     * Count, total, lowest and highest price of the titles of every publisher.
+     * @return the statistics by publisherID, in publisherID order
+     */
+    public Map<Integer, PriceStats> priceStatsByPublisher() throws SQLException {
+        String sql = "SELECT publisherID, COUNT(*), SUM(price), MIN(price), MAX(price) FROM titles\n" +
+                     "WHERE isbn BETWEEN ? AND ? GROUP BY publisherID";
+        return this.<Map<Integer, PriceStats>>scan("titles", "isbn", sql, TreeMap::new,
+                (partial, rs) -> partial.merge(rs.getInt(1), new PriceStats(rs.getLong(2),
+                        rs.getBigDecimal(3), rs.getBigDecimal(4), rs.getBigDecimal(5)), PriceStats::merge),
+                (a, b) -> mergeInto(a, b, PriceStats::merge));
+    }
+
+    /**
+     * @return the number of titles published in every year, in year order, with titles without a year under null first
+     */
+    public Map<Short, Long> titlesPerYear() throws SQLException {
+        String sql = "SELECT Year, COUNT(*) FROM titles\n" +
+                     "WHERE isbn BETWEEN ? AND ? GROUP BY Year";
+        return this.<Map<Short, Long>>scan("titles", "isbn", sql, () -> new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder())),
+                (partial, rs) -> {
+                    short year = rs.getShort(1);
+                    partial.merge(rs.wasNull() ? null : year, rs.getLong(2), Long::sum);
+                },
+                (a, b) -> mergeInto(a, b, Long::sum));
+    }
+
+    /**
+     * Split the table into ranges of 'keyColumn', run the query once per range in parallel and merge the results.
+     * @param keyColumn a column with a unique value in every row, so that no value falls in two ranges
+     * @param sql a query with two parameters, the inclusive start and inclusive end of the key range
+     * @param identity creates an empty partial result for a range
+     * @param accumulator folds one row of the query into a partial result
+     * @param combiner merges two partial results
+     */
+    <A> A scan(String table, String keyColumn, String sql, Supplier<A> identity,
+               RowAccumulator<A> accumulator, BinaryOperator<A> combiner) throws SQLException {
+        A result = identity.get();
+        List<Future<A>> partials = new ArrayList<>();
+        for (Object[] range : keyRanges(table, keyColumn, ranges)) {
+            partials.add(executor.submit(() -> {
+                A partial = identity.get();
+                try (Connection conn = dataSource.getConnection();
+                     PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setObject(1, range[0]);
+                    ps.setObject(2, range[1]);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            accumulator.accumulate(partial, rs);
+                        }
+                    }
+                }
+                return partial;
+            }));
+        }
+        try {
+            for (Future<A> partial : partials) {
+                result = combiner.apply(result, partial.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while scanning " + table, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Scanning " + table + " failed", e.getCause());
+        } finally {
+            for (Future<A> partial : partials) {
+                partial.cancel(true);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Split the table into at most 'count' ranges of the key holding about equal numbers of rows, without reading the table.
+     * The keys are read as numbers, like ISBNs, and the span from the lowest to the highest key is halved again and
+     *  again, each time splitting the part with the most rows by the 'rows' estimate of EXPLAIN, which MySQL gets
+     *  from a few dives into the index. Every half is narrowed to its lowest and highest key, also read from the
+     *  index, so gaps between clusters of keys are dropped; where EXPLAIN has no row estimate (e.g. H2), the width
+     *  of the narrowed half stands in for its rows. The first and last key of every part are then read the same way.
+     * Keys that are not numbers still fall in exactly one range, since the database compares them with the bounds;
+     *  only how even the ranges are depends on the keys being numbers.
+     * @return the inclusive { start, end } of each range, in key order; none if the table is empty
+     */
+    private List<Object[]> keyRanges(String table, String keyColumn, int count) throws SQLException {
+        List<Object[]> ranges = new ArrayList<>(count);
+        try (Connection conn = dataSource.getConnection()) {
+            String[] bounds = minMax(conn, "SELECT MIN(" + keyColumn + "), MAX(" + keyColumn + ") FROM " + table);
+            if (bounds[0] == null) {
+                return ranges;
+            }
+            int digits = keyDigits(conn, table, keyColumn);
+            List<long[]> parts = splitKeySpace(conn, table, keyColumn, count, digits,
+                    keyPosition(bounds[0], digits), keyPosition(bounds[1], digits));
+
+            String between = "SELECT MIN(" + keyColumn + "), MAX(" + keyColumn + ") FROM " + table
+                    + " WHERE " + keyColumn + " >= ? AND " + keyColumn + " < ?";
+            String last = "SELECT MIN(" + keyColumn + "), MAX(" + keyColumn + ") FROM " + table
+                    + " WHERE " + keyColumn + " >= ?";
+            for (int i = 0; i < parts.size(); i++) {
+                // The parts meet at their first positions, so every key is in exactly one part
+                String from = i == 0 ? bounds[0] : keyString(parts.get(i)[0], digits);
+                String[] range = i == parts.size() - 1
+                        ? minMax(conn, last, from)
+                        : minMax(conn, between, from, keyString(parts.get(i + 1)[0], digits));
+                if (range[0] != null) {
+                    ranges.add(new Object[] {range[0], range[1]});
+                }
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Split the key positions 'low' to 'high' into at most 'count' parts, halving the one with the largest estimate
+     *  each time, until there are 'count' parts or none can be split further.
+     * @return the inclusive { first position, last position, estimated rows } of each part, in key order
+     */
+    private static List<long[]> splitKeySpace(Connection conn, String table, String keyColumn, int count, int digits,
+                                              long low, long high) throws SQLException {
+        String bounds = "SELECT MIN(" + keyColumn + "), MAX(" + keyColumn + ") FROM " + table
+                + " WHERE " + keyColumn + " BETWEEN ? AND ?";
+        String explain = "EXPLAIN SELECT " + keyColumn + " FROM " + table
+                + " WHERE " + keyColumn + " BETWEEN ? AND ?";
+        try (PreparedStatement narrow = conn.prepareStatement(bounds);
+             PreparedStatement ps = conn.prepareStatement(explain)) {
+            PriorityQueue<long[]> largest = new PriorityQueue<>((a, b) -> Long.compare(b[2], a[2]));
+            List<long[]> done = new ArrayList<>();
+            largest.add(new long[] {low, high, Long.MAX_VALUE});
+            while (!largest.isEmpty() && largest.size() + done.size() < count) {
+                long[] part = largest.poll();
+                if (part[0] == part[1]) {
+                    done.add(part);
+                    continue;
+                }
+                long mid = part[0] + (part[1] - part[0]) / 2;
+                for (long[] half : new long[][] {{part[0], mid}, {mid + 1, part[1]}}) {
+                    long[] keys = narrow(narrow, half[0], half[1], digits);
+                    if (keys != null) {
+                        largest.add(new long[] {keys[0], keys[1], estimateRows(ps, keys[0], keys[1], digits)});
+                    }
+                }
+            }
+            done.addAll(largest);
+            done.sort(Comparator.comparingLong(part -> part[0]));
+            return done;
+        }
+    }
+
+    /**
+     * @return the positions of the lowest and highest key from position 'from' to 'to', or null if there is none
+     */
+    private static long[] narrow(PreparedStatement bounds, long from, long to, int digits) throws SQLException {
+        bounds.setString(1, keyString(from, digits));
+        bounds.setString(2, keyString(to, digits));
+        try (ResultSet rs = bounds.executeQuery()) {
+            if (!rs.next() || rs.getString(1) == null) {
+                return null;
+            }
+            // Keys that are not plain numbers may map outside the part; keep the part's own bounds then
+            return new long[] {Math.max(from, keyPosition(rs.getString(1), digits)),
+                    Math.min(to, keyPosition(rs.getString(2), digits))};
+        }
+    }
+
+    /**
+     * @return the database's estimate of the rows with keys from position 'from' to 'to', or the width of the part
+     *  if EXPLAIN has no 'rows' column
+     */
+    private static long estimateRows(PreparedStatement explain, long from, long to, int digits) throws SQLException {
+        explain.setString(1, keyString(from, digits));
+        explain.setString(2, keyString(to, digits));
+        try (ResultSet rs = explain.executeQuery()) {
+            ResultSetMetaData meta = rs.getMetaData();
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                if ("rows".equalsIgnoreCase(meta.getColumnLabel(i))) {
+                    return rs.next() ? rs.getLong(i) : 0;
+                }
+            }
+        }
+        return to - from + 1;
+    }
+
+    private static String[] minMax(Connection conn, String sql, String... params) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setString(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return new String[] {rs.getString(1), rs.getString(2)};
+            }
+        }
+    }
+
+    /**
+     * @return the number of leading digits keys are read as: as many as the column holds, up to MAX_KEY_DIGITS,
+     *  since the lowest and highest keys may be shorter than the others
+     */
+    private static int keyDigits(Connection conn, String table, String keyColumn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT " + keyColumn + " FROM " + table + " WHERE 1 = 0")) {
+            return Math.max(1, Math.min(MAX_KEY_DIGITS, rs.getMetaData().getPrecision(1)));
+        }
+    }
+
+    /**
+     * @return the first 'digits' characters of the key as a number, padded with zeros and with any character that is
+     *  not a digit read as the nearest digit
+     */
+    private static long keyPosition(String key, int digits) {
+        long position = 0;
+        for (int i = 0; i < digits; i++) {
+            char c = i < key.length() ? key.charAt(i) : '0';
+            position = position * 10 + Math.max(0, Math.min(9, c - '0'));
+        }
+        return position;
+    }
+
+    private static String keyString(long position, int digits) {
+        return String.format("%0" + digits + "d", position);
+    }
+
+    private static <K, V> Map<K, V> mergeInto(Map<K, V> into, Map<K, V> from, BinaryOperator<V> merge) {
+        for (Map.Entry<K, V> entry : from.entrySet()) {
+            into.merge(entry.getKey(), entry.getValue(), merge);
+        }
+        return into;
+    }
+
+    /**
+     * Usage: java ParallelScanner [threads]
+     * Prints the price statistics per publisher and the number of titles per year.
+     */
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        Properties props = new Properties(System.getProperties());
+        props.setProperty("pool.maxSize", String.valueOf(threads));
+        ExecutorService executor = newExecutor(threads);
+        try (ConnectionPool pool = ConnectionPool.fromProperties(props)) {
+            ParallelScanner scanner = new ParallelScanner(pool, executor, threads);
+
+            long start = System.nanoTime();
+            Map<Integer, PriceStats> prices = scanner.priceStatsByPublisher();
+            System.out.printf("\nREPORT: Prices per publisher (%.3f seconds)\n", (System.nanoTime() - start) / 1e9);
+            System.out.printf("%-12s| %-8s| %-10s| %-10s| %-10s\n", "publisherID", "titles", "average", "min", "max");
+            System.out.println("-------------------------------------------------------");
+            for (Map.Entry<Integer, PriceStats> entry : prices.entrySet()) {
+                PriceStats stats = entry.getValue();
+                System.out.printf("%-12s| %-8s| %-10.2f| %-10s| %-10s\n", entry.getKey(), stats.count(),
+                        stats.average(), stats.min(), stats.max());
+            }
+
+            start = System.nanoTime();
+            Map<Short, Long> years = scanner.titlesPerYear();
+            System.out.printf("\nREPORT: Titles per year (%.3f seconds)\n", (System.nanoTime() - start) / 1e9);
+            System.out.printf("%-5s| %-8s\n", "year", "titles");
+            System.out.println("-----------------");
+            for (Map.Entry<Short, Long> entry : years.entrySet()) {
+                System.out.printf("%-5s| %-8s\n", entry.getKey(), entry.getValue());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            executor.shutdown();
+        }
+        System.out.println("Done.");
+    }
+
+    /**
+     * Folds one row of a range query into a partial result.
+     */
+    interface RowAccumulator<A> {
+        void accumulate(A partial, ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Price statistics of a group of titles.
+     */
+    public record PriceStats(long count, BigDecimal sum, BigDecimal min, BigDecimal max) {
+
+        PriceStats merge(PriceStats other) {
+            return new PriceStats(count + other.count, sum.add(other.sum),
+                    min.min(other.min), max.max(other.max));
+        }
+
+        double average() {
+            return count == 0 ? 0 : sum.doubleValue() / count;
+        }
+    }
+}
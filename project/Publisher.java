@@ -0,0 +1,5 @@
+/**
+ * One row of the 'publishers' table.
+ */
+public record Publisher(int publisherID, String publisherName) {
+}
@@ -0,0 +1,125 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, row count, batch size and error metrics of one logical query, such as
+ *  "books-by-publisher" or "load.titles". Instances are created and looked up through Metrics.
+ *
+ * Callers take System.nanoTime() before the work and pass it to one of the record methods
+ *  afterwards, so a measurement costs two clock reads and a few atomic additions:
+ *
+ *   long start = System.nanoTime();
+ *   try {
+ *       ... run the query and read its rows ...
+ *       metrics.record(start, rows);
+ *   } catch (SQLException e) {
+ *       metrics.error();
+ *       throw e;
+ *   }
+ */
+public class QueryMetrics implements QueryMetricsMBean {
+
+    private final String name;
+    private final Histogram latency = new Histogram();
+    private final Histogram batchSizes = new Histogram();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    QueryMetrics(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Record a successful execution that started at 'startNanos' and returned or changed 'rows' rows.
+     */
+    public void record(long startNanos, long rows) {
+        latency.record(System.nanoTime() - startNanos);
+        this.rows.add(rows);
+    }
+
+    /**
+     * Record a successful batch of 'batchSize' statements that started at 'startNanos'.
+     */
+    public void recordBatch(long startNanos, int batchSize, long rows) {
+        record(startNanos, rows);
+        batchSizes.record(batchSize);
+    }
+
+    /**
+     * Record a failed execution. Failures are counted but kept out of the latencies.
+     */
+    public void error() {
+        errors.increment();
+    }
+
+    Histogram latency() {
+        return latency;
+    }
+
+    Histogram batchSizes() {
+        return batchSizes;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.count();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.mean() / 1_000;
+    }
+
+    @Override
+    public long getP50Micros() {
+        return latency.quantile(0.5) / 1_000;
+    }
+
+    @Override
+    public long getP99Micros() {
+        return latency.quantile(0.99) / 1_000;
+    }
+
+    @Override
+    public long getP999Micros() {
+        return latency.quantile(0.999) / 1_000;
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return latency.max() / 1_000;
+    }
+
+    @Override
+    public long getBatches() {
+        return batchSizes.count();
+    }
+
+    @Override
+    public double getMeanBatchSize() {
+        return batchSizes.mean();
+    }
+
+    @Override
+    public long getMaxBatchSize() {
+        return batchSizes.max();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + getCount() + " calls, " + getErrors() + " errors, " + getRows() + " rows";
+    }
+}
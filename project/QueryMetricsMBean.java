@@ -0,0 +1,28 @@
+/**
+ * The JMX view of the metrics of one logical query; see QueryMetrics.
+ * Latencies are in microseconds.
+ */
+public interface QueryMetricsMBean {
+
+    long getCount();
+
+    long getErrors();
+
+    long getRows();
+
+    double getMeanMicros();
+
+    long getP50Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+
+    long getBatches();
+
+    double getMeanBatchSize();
+
+    long getMaxBatchSize();
+}
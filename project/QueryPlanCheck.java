@@ -0,0 +1,119 @@
+// Import SQL package
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the catalog queries are answered from indexes and have not regressed to full scans.
+ *
+ * The check recreates the tables, loads a synthetic catalog (so the optimizer has statistics to work
+ *  with), runs EXPLAIN on every query and fails if any table in a plan is read with a full table scan
+ *  ("ALL") or a full index scan ("index"), or if a query that should come out of an index already in
+ *  order needs a sort ("Using filesort"). Queries that list a whole table by design (SELECT_TITLES,
+ *  SELECT_PUBLISHERS, SELECT_AUTHOR_ISBNS) are not checked; listing authors by last name is checked for
+ *  using the covering name index without a sort, since it reads every author anyway. The books of a
+ *  publisher must come out of idx_titles_publisher_title in title order; the join used for names shared
+ *  by several publishers, and the titles of an author, which come from many publishers, may sort.
+ *
+ * The database is chosen like in JDBC.main (-Ddb.url, -Ddb.user, -Ddb.password); its tables are dropped.
+ * It must be a MySQL server, since the check reads MySQL's EXPLAIN output.
+ * The exit status is 0 when every plan passes and 1 otherwise, including when the check cannot run.
+ * The plan-check profile of pom.xml runs it in the verify phase and fails the build on a non-zero status:
+ *   mvn -P plan-check verify -Ddb.url=... [-Dplan.titles=10000]
+ * It is not part of the default build, because it wipes the database it is pointed at.
+ *
+ * Usage: java QueryPlanCheck [titles]
+ */
+public class QueryPlanCheck {
+
+    static final int DEFAULT_TITLES = 10_000;
+
+    public static void main(String[] args) {
+        int titles = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TITLES;
+        List<String> failures = new ArrayList<>();
+        try (ConnectionPool pool = ConnectionPool.fromProperties(System.getProperties());
+             Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement()) {
+            System.out.println("Loading " + titles + " titles...");
+            JDBC.createTables(stmt);
+            CatalogGenerator generator = CatalogGenerator.withDefaults(CatalogBenchmark.SEED, titles);
+            generator.load(new BulkLoader(conn, BulkLoader.DEFAULT_BATCH_SIZE));
+            stmt.execute("ANALYZE TABLE authors, publishers, titles, authorISBN");
+
+            String[] author = generator.author(0);
+            String publisher = generator.publisher(0)[0];
+            String title = generator.title(0)[5];
+
+            check(conn, failures, "authorsByLastName", SQL.SELECT_AUTHORS_BY_LAST_NAME, true, true,
+                    "idx_authors_name");
+            check(conn, failures, "publisherByName", SQL.SELECT_PUBLISHER_IDS_BY_NAME, false, false, null,
+                    publisher);
+            check(conn, failures, "booksByPublisher", SQL.SELECT_BOOKS_BY_PUBLISHER_ID, false, true,
+                    "idx_titles_publisher_title", 1);
+            check(conn, failures, "booksBySharedPublisherName", SQL.SELECT_BOOKS_BY_PUBLISHER, false, false, null,
+                    publisher);
+            check(conn, failures, "titlesByAuthor", SQL.SELECT_TITLES_BY_AUTHOR, false, false, null,
+                    author[0], author[1]);
+            check(conn, failures, "titleByTitle",
+                    "SELECT isbn FROM titles WHERE title = ?", false, false, null, title);
+            check(conn, failures, "isbnsOfAuthors",
+                    "SELECT DISTINCT isbn FROM authorISBN WHERE authorID IN (?, ?)", false, false, null, 1, 2);
+            check(conn, failures, "authorsOfTitle",
+                    "SELECT authorID FROM authorISBN WHERE isbn = ?", false, false, null, generator.title(0)[0]);
+        } catch (Exception e) {
+            e.printStackTrace();
+            failures.add("check could not run: " + e);
+        }
+
+        System.out.println();
+        if (failures.isEmpty()) {
+            System.out.println("All query plans use indexes.");
+        } else {
+            System.out.println("Query plan regressions:");
+            for (String failure : failures) {
+                System.out.println("  " + failure);
+            }
+            System.exit(1);
+        }
+    }
+
+    /**
+     * EXPLAIN one query, print its plan and record any regression in 'failures'.
+     * @param fullRead true if the query reads a whole table in index order, so a full index scan is expected
+     * @param ordered true if the query's ORDER BY must be satisfied by reading an index in order, without a sort
+     * @param expectedKey the index the query must use, or null if any index will do
+     * @param params values for the query's parameters
+     */
+    private static void check(Connection conn, List<String> failures, String name, String sql, boolean fullRead,
+                              boolean ordered, String expectedKey, Object... params) throws SQLException {
+        System.out.println("\nPLAN: " + name);
+        System.out.printf("%-12s| %-8s| %-28s| %-10s| %s\n", "table", "type", "key", "rows", "Extra");
+        System.out.println("----------------------------------------------------------------------------------------------------");
+        try (PreparedStatement ps = conn.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            try (ResultSet plan = ps.executeQuery()) {
+                while (plan.next()) {
+                    String table = plan.getString("table");
+                    String type = plan.getString("type");
+                    String key = plan.getString("key");
+                    String extra = plan.getString("Extra");
+                    System.out.printf("%-12s| %-8s| %-28s| %-10s| %s\n", table, type, key, plan.getString("rows"), extra);
+
+                    if ("ALL".equals(type)) {
+                        failures.add(name + ": full table scan of " + table);
+                    } else if ("index".equals(type) && !fullRead) {
+                        failures.add(name + ": full index scan of " + table + " using " + key);
+                    }
+                    if (expectedKey != null && !expectedKey.equals(key)) {
+                        failures.add(name + ": expected index " + expectedKey + " on " + table + " but got " + key);
+                    }
+                    if (ordered && extra != null && extra.contains("Using filesort")) {
+                        failures.add(name + ": sorts " + table + " instead of reading it in index order");
+                    }
+                }
+            }
+        }
+    }
+}
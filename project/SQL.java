@@ -1,29 +1,51 @@
 
 public class SQL {
 
-    // We drop pre-existing tables first to ensure that we can initialize new tables every time we run the program.
+    /**
+     * Version of the table definitions below. Increase it whenever a definition changes, and add the
+     *  statements that bring a database of the previous version up to date to SchemaMigrator.MIGRATIONS.
+     * Version 2 uses VARCHAR names, a SMALLINT year and a DECIMAL price, removes the duplicate unique
+     *  index on authors.authorID, gives 'authorISBN' a primary key and adds the indexes the catalog
+     *  queries need (see QueryPlanCheck).
+     * Version 3 adds an indexed 'updatedAt' change-tracking column to every table, so CatalogSnapshot
+     *  can read just the rows inserted or changed since its last refresh.
+     * Version 4 keys the import checkpoints by the file being imported instead of by table alone.
+     */
+    static final int SCHEMA_VERSION = 4;
+
+    // Drops every table, including the schema version, so the next SchemaMigrator run starts from an empty database.
+    // JDBC.main no longer does this on every run; it is used by -Ddb.reset=true, CatalogBenchmark and QueryPlanCheck.
     static final String DROP_TABLES =
-            "DROP TABLE IF EXISTS authorISBN, authors, titles, publishers;";
+            "DROP TABLE IF EXISTS authorISBN, authors, titles, publishers, importCheckpoint, schemaVersion;";
 
     /**
      * Each tuple in the 'authors' table will include a unique authorID that is automatically generated when we insert data.
      * We also have the first name and last name included inside the authors table.
+     * The (lastName, firstName) index serves lookups by name and listing authors by last name; because
+     *  it also holds the primary key, those queries never have to read the table rows.
      */
     static final String CREATE_AUTHORS_TABLE =
-            "CREATE TABLE authors (\n" +
-            " authorID INTEGER NOT NULL UNIQUE AUTO_INCREMENT PRIMARY KEY,\n" +
-            " firstName CHAR(20) ,\n" +
-            " lastName CHAR(20) \n" +
+            "CREATE TABLE IF NOT EXISTS authors (\n" +
+            " authorID INTEGER NOT NULL AUTO_INCREMENT PRIMARY KEY,\n" +
+            " firstName VARCHAR(20) ,\n" +
+            " lastName VARCHAR(20) ,\n" +
+            " updatedAt TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),\n" +
+            " INDEX idx_authors_name (lastName, firstName),\n" +
+            " INDEX idx_authors_updated (updatedAt)\n" +
             " );";
 
     /**
      * The 'publishers' table will include a unique publisherID that is automatically generated when we insert a
      * tuple into the publishers table with the publisher's name.
+     * Publishers are looked up by name, so the name is indexed.
      */
     static final String CREATE_PUBLISHERS_TABLE =
-            "CREATE TABLE publishers (\n" +
+            "CREATE TABLE IF NOT EXISTS publishers (\n" +
             " publisherID INTEGER NOT NULL AUTO_INCREMENT PRIMARY KEY,\n" +
-            " publisherName CHAR(100) \n" +
+            " publisherName VARCHAR(100) ,\n" +
+            " updatedAt TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),\n" +
+            " INDEX idx_publishers_name (publisherName),\n" +
+            " INDEX idx_publishers_updated (updatedAt)\n" +
             " );";
 
     /**
@@ -32,16 +54,22 @@ public class SQL {
      * The publisherID in this table is created as a reference to the publisherID in the 'publishers' table. If we
      *  delete or update the publisherID from the 'publishers' table, the publisherID will be updated the 'titles'
      *  table also.
+     * The (publisherID, title, ...) index holds every column of a publisher's books in title order, so listing
+     *  the books of one publisherID is a single range read of the index with no sort and no table lookups.
+     *  It also serves as the index the foreign key needs. Titles are also looked up by title.
      */
     static final String CREATE_TITLES_TABLE =
-            "CREATE TABLE titles (\n" +
+            "CREATE TABLE IF NOT EXISTS titles (\n" +
             " isbn VARCHAR(13) PRIMARY KEY,\n" +
             " editionNumber INTEGER ,\n" +
-            " Year CHAR(4) ,\n" +
+            " Year SMALLINT ,\n" +
             " publisherID INTEGER NOT NULL,\n" +
-            " price FLOAT(8,2) NOT NULL,\n" +
+            " price DECIMAL(8,2) NOT NULL,\n" +
             " title VARCHAR(500) NOT NULL,\n" +
-            " INDEX (publisherID),\n" +
+            " updatedAt TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),\n" +
+            " INDEX idx_titles_publisher_title (publisherID, title, Year, editionNumber, price),\n" +
+            " INDEX idx_titles_title (title),\n" +
+            " INDEX idx_titles_updated (updatedAt),\n" +
             " FOREIGN KEY (publisherID) REFERENCES publishers(publisherID) ON DELETE CASCADE ON UPDATE CASCADE\n" +
             " );";
 
@@ -51,20 +79,73 @@ public class SQL {
      * Similarly, the isbn in this table is a reference to the isbn in the 'titles' table.
      * If either authorID or isbn is updated or deleted from the table they are referenced from,
      *  the authorID and isbn in this table will be updated or deleted, too.
+     * An author is linked to a title at most once, so (authorID, isbn) is the primary key.
+     *  The isbn index serves finding the authors of a title and the foreign key to 'titles'.
      */
     static final String CREATE_AUTHOR_ISBN_TABLE =
-            "CREATE TABLE authorISBN (\n" +
-            " authorID INTEGER ,\n" +
-            " isbn VARCHAR(13) ,\n" +
-            " INDEX (authorID, isbn),\n" +
+            "CREATE TABLE IF NOT EXISTS authorISBN (\n" +
+            " authorID INTEGER NOT NULL,\n" +
+            " isbn VARCHAR(13) NOT NULL,\n" +
+            " updatedAt TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),\n" +
+            " PRIMARY KEY (authorID, isbn),\n" +
+            " INDEX idx_authorISBN_isbn (isbn),\n" +
+            " INDEX idx_authorISBN_updated (updatedAt),\n" +
             " FOREIGN KEY (authorID) REFERENCES authors(authorID) ON DELETE CASCADE,\n" +
             " FOREIGN KEY (isbn) REFERENCES titles(isbn) ON DELETE CASCADE\n" +
             " );";
 
+    /**
+     * The 'importCheckpoint' table records every batch committed by the CatalogImporter.
+     * A checkpoint row is inserted in the same transaction as the batch it describes, so after a crash
+     *  the importer can skip exactly the batches that made it into the database. 'importId' identifies
+     *  the file being imported, so the checkpoints of one file never cause batches of another to be skipped;
+     *  the rows of an import are deleted once it has completed.
+     */
+    static final String CREATE_IMPORT_CHECKPOINT_TABLE =
+            "CREATE TABLE IF NOT EXISTS importCheckpoint (\n" +
+            " importId CHAR(64) NOT NULL,\n" +
+            " tableName VARCHAR(32) NOT NULL,\n" +
+            " batchNumber BIGINT NOT NULL,\n" +
+            " PRIMARY KEY (importId, tableName, batchNumber)\n" +
+            " );";
+
+    /**
+     * The 'schemaVersion' table records the schema version a database was created with (step 0) and every
+     *  migration step applied to it since, so SchemaMigrator applies each step exactly once.
+     */
+    static final String CREATE_SCHEMA_VERSION_TABLE =
+            "CREATE TABLE IF NOT EXISTS schemaVersion (\n" +
+            " version INTEGER NOT NULL,\n" +
+            " step INTEGER NOT NULL,\n" +
+            " description VARCHAR(200) NOT NULL,\n" +
+            " appliedAt TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,\n" +
+            " PRIMARY KEY (version, step)\n" +
+            " );";
+
+    static final String SELECT_SCHEMA_VERSION_STEPS =
+            "SELECT version, step FROM schemaVersion";
+
+    static final String INSERT_SCHEMA_VERSION_STEP =
+            "INSERT INTO schemaVersion (version, step, description) VALUES (?, ?, ?)";
+
+    static final String INSERT_IMPORT_CHECKPOINT =
+            "INSERT INTO importCheckpoint (importId, tableName, batchNumber) VALUES (?, ?, ?)";
+
+    static final String SELECT_IMPORT_CHECKPOINTS =
+            "SELECT batchNumber FROM importCheckpoint WHERE importId = ? AND tableName = ?";
+
+    static final String DELETE_IMPORT_CHECKPOINTS =
+            "DELETE FROM importCheckpoint WHERE importId = ? AND tableName = ?";
+
     /**
      * A book cannot exist without an author, so if we delete an author from the 'authors' table,
      *  we have to delete the tuple in the 'titles' that is associated with the deleted author.
      * We cannot do this with cascading, so we create trigger that does accomplishes this.
+     * The titles are found by the deleted row's authorID, and with IN so authors with several titles work.
+     *
+     * NOTE: The triggers run once per deleted row. They are no longer installed by JDBC.createTables;
+     *       CascadeDeleteService deletes authors and their titles with set-based statements instead.
+     *       The triggers are kept so CatalogBenchmark can compare the two.
      */
     static final String CREATE_TRIGGER_DELETE_AUTHOR =
             "CREATE TRIGGER BOOKS.DeleteAuthor\n" +
@@ -72,11 +153,8 @@ public class SQL {
             "FOR EACH ROW\n" +
             "BEGIN\n" +
             "   DELETE FROM titles\n" +
-            "   WHERE isbn = (SELECT isbn FROM authorISBN\n" +
-            "                 WHERE  authorID = (SELECT authorID\n" +
-            "                                    FROM   authors\n" +
-            "                                    WHERE  firstName = OLD.firstName\n" +
-            "                                      AND  lastName  = OLD.lastName));\n" +
+            "   WHERE isbn IN (SELECT isbn FROM authorISBN\n" +
+            "                  WHERE  authorID = OLD.authorID);\n" +
             "END;";
 
     /**
@@ -97,101 +175,266 @@ public class SQL {
             "   WHERE isbn = OLD.isbn;\n" +
             "END;";
 
+    static final String DROP_TRIGGER_DELETE_AUTHOR =
+            "DROP TRIGGER IF EXISTS BOOKS.DeleteAuthor";
+
+    static final String DROP_TRIGGER_DELETE_AUTHOR_ISBN =
+            "DROP TRIGGER IF EXISTS BOOKS.DeleteAuthorISBN";
+
     /**
-     * SQL code that inserts data into the 'authors' table.
-     * Note that the authorID is automatically generated with unique values.
+     * Brings a database created by the original table definitions (version 1: CHAR names and year, FLOAT
+     *  price, a unique index next to the primary key of 'authors', no primary key on 'authorISBN' and
+     *  the two delete triggers) up to version 2. Every statement is one migration step.
+     * The indexes created implicitly by version 1 are named after their first column. 'authorISBN'
+     *  must not hold the same (authorID, isbn) pair twice, or adding its primary key fails.
      */
-    static final String[] INSERT_INTO_AUTHORS = {
-            "INSERT INTO authors (firstName, lastName) VALUES (\"Steven\", \"King\");\n",
-            "INSERT INTO authors (firstName, lastName) VALUES (\"J.K.\", \"Rowling\");\n",
-            "INSERT INTO authors (firstName, lastName) VALUES (\"Susan\", \"McBride\");\n",
-            "INSERT INTO authors (firstName, lastName) VALUES (\"Christopher\", \"Mari\");\n",
-            "INSERT INTO authors (firstName, lastName) VALUES (\"James\", \"Patterson\");\n",
-            "INSERT INTO authors (firstName, lastName) VALUES (\"James\", \"Joyce\");\n",
-            "INSERT INTO authors (firstName, lastName) VALUES (\"Scott\", \"Fitzgerald\");\n",
-            "INSERT INTO authors (firstName, lastName) VALUES (\"Vladimir\", \"Nabokov\");\n",
-            "INSERT INTO authors (firstName, lastName) VALUES (\"William\", \"Faulkner\");\n",
-            "INSERT INTO authors (firstName, lastName) VALUES (\"Aldous\", \"Huxley\");\n",
-            "INSERT INTO authors (firstName, lastName) VALUES (\"Arthur\", \"Koestler\");\n",
-            "INSERT INTO authors (firstName, lastName) VALUES (\"Ayn\", \"Rand\");\n",
-            "INSERT INTO authors (firstName, lastName) VALUES (\"Ron\", \"Hubbard\");\n",
-            "INSERT INTO authors (firstName, lastName) VALUES (\"John\", \"Tolkein\");\n",
-            "INSERT INTO authors (firstName, lastName) VALUES (\"Harper\", \"Lee\");"
+    static final String[] MIGRATE_TO_VERSION_2 = {
+            "ALTER TABLE authors MODIFY firstName VARCHAR(20), MODIFY lastName VARCHAR(20),\n" +
+            " DROP INDEX authorID, ADD INDEX idx_authors_name (lastName, firstName)",
+            "ALTER TABLE publishers MODIFY publisherName VARCHAR(100), ADD INDEX idx_publishers_name (publisherName)",
+            "ALTER TABLE titles MODIFY Year SMALLINT, MODIFY price DECIMAL(8,2) NOT NULL,\n" +
+            " ADD INDEX idx_titles_publisher_title (publisherID, title, Year, editionNumber, price),\n" +
+            " ADD INDEX idx_titles_title (title)",
+            "ALTER TABLE titles DROP INDEX publisherID",
+            "ALTER TABLE authorISBN MODIFY authorID INTEGER NOT NULL, MODIFY isbn VARCHAR(13) NOT NULL,\n" +
+            " ADD PRIMARY KEY (authorID, isbn), ADD INDEX idx_authorISBN_isbn (isbn)",
+            "ALTER TABLE authorISBN DROP INDEX authorID",
+            DROP_TRIGGER_DELETE_AUTHOR,
+            DROP_TRIGGER_DELETE_AUTHOR_ISBN,
+            CREATE_IMPORT_CHECKPOINT_TABLE,
     };
 
     /**
-     * SQL code that inserts data into the 'publishers' table.
+     * Brings a version 2 database up to version 3 by adding the 'updatedAt' change-tracking column.
+     * Existing rows get the time of the migration.
+     */
+    static final String[] MIGRATE_TO_VERSION_3 = {
+            "ALTER TABLE authors ADD COLUMN updatedAt TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),\n" +
+            " ADD INDEX idx_authors_updated (updatedAt)",
+            "ALTER TABLE publishers ADD COLUMN updatedAt TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),\n" +
+            " ADD INDEX idx_publishers_updated (updatedAt)",
+            "ALTER TABLE titles ADD COLUMN updatedAt TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),\n" +
+            " ADD INDEX idx_titles_updated (updatedAt)",
+            "ALTER TABLE authorISBN ADD COLUMN updatedAt TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),\n" +
+            " ADD INDEX idx_authorISBN_updated (updatedAt)",
+    };
+
+    /**
+     * Brings a version 3 database up to version 4 by recreating 'importCheckpoint' with the 'importId' column.
+     * Checkpoints of the old form cannot be told apart by file, so they are dropped; an import that was
+     *  interrupted before the migration starts over.
+     */
+    static final String[] MIGRATE_TO_VERSION_4 = {
+            "DROP TABLE IF EXISTS importCheckpoint",
+            CREATE_IMPORT_CHECKPOINT_TABLE,
+    };
+
+    /**
+     * A MySQL named lock held by SchemaMigrator while it migrates, so that two programs starting at the same
+     *  time do not both apply the same steps. GET_LOCK waits up to the given number of seconds and returns
+     *  1 once the lock is held, 0 on timeout and NULL on an error; the lock belongs to the connection.
+     */
+    static final String GET_SCHEMA_LOCK =
+            "SELECT GET_LOCK('catalog_schema', ?)";
+
+    static final String RELEASE_SCHEMA_LOCK =
+            "SELECT RELEASE_LOCK('catalog_schema')";
+
+    /**
+     * Parameterized statement that inserts one tuple into the 'authors' table.
+     * Note that the authorID is automatically generated with unique values.
+     */
+    static final String INSERT_AUTHOR =
+            "INSERT INTO authors (firstName, lastName) VALUES (?, ?)";
+
+    /**
+     * Parameterized statement that inserts one tuple into the 'publishers' table.
      * Note that the publisherID is automatically generated with unique values.
      */
-    static final String[] INSERT_INTO_PUBLISHERS = {
-            "INSERT INTO publishers (publisherName) VALUES (\"Signet Books\");\n",
-            "INSERT INTO publishers (publisherName) VALUES (\"Pearson\");\n",
-            "INSERT INTO publishers (publisherName) VALUES (\"ThomsonReuters\");\n",
-            "INSERT INTO publishers (publisherName) VALUES (\"Penguin Random\");\n",
-            "INSERT INTO publishers (publisherName) VALUES (\"Wiley\");\n",
-            "INSERT INTO publishers (publisherName) VALUES (\"Nature America\");\n",
-            "INSERT INTO publishers (publisherName) VALUES (\"Scholastic, Inc.\");\n",
-            "INSERT INTO publishers (publisherName) VALUES (\"Warner Bros Global Publishing\");\n",
-            "INSERT INTO publishers (publisherName) VALUES (\"Modern Library\");\n",
-            "INSERT INTO publishers (publisherName) VALUES (\"Publishers Group West\");\n",
-            "INSERT INTO publishers (publisherName) VALUES (\"Crown Publishers, Inc.\");\n",
-            "INSERT INTO publishers (publisherName) VALUES (\"Harper Collins Publishing Co\");\n",
-            "INSERT INTO publishers (publisherName) VALUES (\"St. Martin's Press\");\n",
-            "INSERT INTO publishers (publisherName) VALUES (\"Allworth Press\");\n",
-            "INSERT INTO publishers (publisherName) VALUES (\"German Publishers\");"
+    static final String INSERT_PUBLISHER =
+            "INSERT INTO publishers (publisherName) VALUES (?)";
+
+    /**
+     * Parameterized statement that inserts one tuple into the 'titles' table.
+     * The publisherID is resolved from the publisher name by the loader before the row is inserted,
+     *  so no SELECT against the 'publishers' table is needed per row.
+     */
+    static final String INSERT_TITLE =
+            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title) VALUES (?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Parameterized statement that inserts one tuple into the 'authorISBN' table.
+     * The authorID and isbn are resolved from the author's name and the book title by the loader
+     *  before the row is inserted, so no SELECT against 'authors' or 'titles' is needed per row.
+     */
+    static final String INSERT_AUTHOR_ISBN =
+            "INSERT INTO authorISBN (authorID, isbn) VALUES (?, ?)";
+
+    /**
+     * Queries used by CatalogQueries.
+     * Books by publisher are found by looking up the publisherID of the name first and then reading that
+     *  publisher's slice of the titles index, which is already in title order. A join on the name cannot
+     *  skip the sort, because publisher names are not unique and MySQL has to merge the books of every
+     *  publisher it finds; it is only used for names that really are shared by several publishers.
+     */
+    static final String SELECT_AUTHORS_BY_LAST_NAME =
+            "SELECT authorID, firstName, lastName FROM authors ORDER BY lastName, firstName ASC";
+
+    static final String SELECT_PUBLISHERS =
+            "SELECT publisherID, publisherName FROM publishers";
+
+    static final String SELECT_TITLES =
+            "SELECT isbn, title, editionNumber, Year, publisherID, price FROM titles";
+
+    static final String SELECT_BOOKS_BY_PUBLISHER =
+            "SELECT t.isbn, t.title, t.editionNumber, t.Year, t.publisherID, t.price\n" +
+            "FROM titles t JOIN publishers p ON p.publisherID = t.publisherID\n" +
+            "WHERE p.publisherName = ?\n" +
+            "ORDER BY t.title ASC";
+
+    static final String SELECT_PUBLISHER_IDS_BY_NAME =
+            "SELECT publisherID FROM publishers WHERE publisherName = ?";
+
+    static final String SELECT_BOOKS_BY_PUBLISHER_ID =
+            "SELECT isbn, title, editionNumber, Year, publisherID, price FROM titles WHERE publisherID = ? ORDER BY title ASC";
+
+    static final String SELECT_AUTHOR_ISBNS =
+            "SELECT authorID, isbn FROM authorISBN";
+
+    /**
+     * Queries used by CatalogSnapshot. A snapshot is loaded with them as they are and refreshed
+     *  with CHANGED_SINCE appended, which reads only the rows inserted or changed since a time.
+     */
+    static final String SNAPSHOT_AUTHORS =
+            "SELECT authorID, firstName, lastName, updatedAt FROM authors";
+
+    static final String SNAPSHOT_PUBLISHERS =
+            "SELECT publisherID, publisherName, updatedAt FROM publishers";
+
+    static final String SNAPSHOT_TITLES =
+            "SELECT isbn, title, editionNumber, Year, publisherID, price, updatedAt FROM titles";
+
+    static final String SNAPSHOT_AUTHOR_ISBNS =
+            "SELECT authorID, isbn, updatedAt FROM authorISBN";
+
+    static final String CHANGED_SINCE =
+            " WHERE updatedAt >= ?";
+
+    static final String SELECT_TITLES_BY_AUTHOR =
+            "SELECT t.isbn, t.title, t.editionNumber, t.Year, t.publisherID, t.price\n" +
+            "FROM authors a\n" +
+            "JOIN authorISBN ai ON ai.authorID = a.authorID\n" +
+            "JOIN titles t ON t.isbn = ai.isbn\n" +
+            "WHERE a.firstName = ? AND a.lastName = ?\n" +
+            "ORDER BY t.title ASC";
+
+    /**
+     * Inserts used by CatalogWriter.addTitle(), which names the publisher and the author instead of passing their IDs.
+     * Each inserts nothing if no publisher or author has the given name.
+     */
+    static final String INSERT_TITLE_OF_PUBLISHER =
+            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title)\n" +
+            "SELECT ?, ?, ?, publisherID, ?, ? FROM publishers WHERE publisherName = ? LIMIT 1";
+
+    static final String INSERT_AUTHOR_ISBN_OF_AUTHOR =
+            "INSERT INTO authorISBN (authorID, isbn)\n" +
+            "SELECT authorID, ? FROM authors WHERE firstName = ? AND lastName = ? LIMIT 1";
+
+    /**
+     * Updates used by CatalogWriter.
+     */
+    static final String UPDATE_AUTHOR_FIRST_NAME =
+            "UPDATE authors SET firstName = ? WHERE firstName = ?";
+
+    static final String UPDATE_PUBLISHER_NAME =
+            "UPDATE publishers SET publisherName = ? WHERE publisherName = ?";
+
+    /**
+     * Seed data for the 'authors' table: { firstName, lastName }.
+     */
+    static final String[][] AUTHORS = {
+            {"Steven", "King"},
+            {"J.K.", "Rowling"},
+            {"Susan", "McBride"},
+            {"Christopher", "Mari"},
+            {"James", "Patterson"},
+            {"James", "Joyce"},
+            {"Scott", "Fitzgerald"},
+            {"Vladimir", "Nabokov"},
+            {"William", "Faulkner"},
+            {"Aldous", "Huxley"},
+            {"Arthur", "Koestler"},
+            {"Ayn", "Rand"},
+            {"Ron", "Hubbard"},
+            {"John", "Tolkein"},
+            {"Harper", "Lee"}
     };
 
     /**
-     * SQL code that inserts data into the 'titles' table.
-     * To create a reference to publisherID in the 'publishers' table, we insert
-     *  a SELECT statement inside each INSERT INTO statement. The SELECT statement
-     *  gets a publisherID from the 'publishers' table and includes that value as
-     *  part of the data inserted into the 'titles' table.
-     */
-    static final String[] INSERT_INTO_TITLE = {
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, Title) VALUES(\"9780451001234\", 1, \"2000\", (SELECT publisherID FROM publishers WHERE publisherName = \"Signet Books\"), 10.11, \"Harry Potter\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, Title) VALUES(\"9780451115089\", 1, \"1982\", (SELECT publisherID FROM publishers WHERE publisherName = \"Pearson\"), 14.99, \"The Running Man\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, Title) VALUES(\"9780451111111\", 1, \"1982\", (SELECT publisherID FROM publishers WHERE publisherName = \"Pearson\"), 15.99, \"A Running Man\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, Title) VALUES(\"9780451110000\", 1, \"1982\", (SELECT publisherID FROM publishers WHERE publisherName = \"Pearson\"), 16.99, \"Zzz Running Man\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title) VALUES(\"9450260214523\", 1, \"1992\", (SELECT publisherID FROM publishers WHERE publisherName = \"ThomsonReuters\"), 26.00, \"Ulysses\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, Title) VALUES(\"9780451240599\", 1, \"1933\", (SELECT publisherID FROM publishers WHERE publisherName = \"Penguin Random\"), 14.99, \"The Great Penguin\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title) VALUES(\"1024483866640\", 2, \"1925\", (SELECT publisherID FROM publishers WHERE publisherName = \"Wiley\"), 19.22, \"The Great Gatsby\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title) VALUES(\"4303004852112\", 1, \"1955\", (SELECT publisherID FROM publishers WHERE publisherName = \"Nature America\"), 19.1, \"Lolita\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title) VALUES(\"3459073487102\", 1, \"1932\", (SELECT publisherID FROM publishers WHERE publisherName = \"Scholastic, Inc.\"), 12.2, \"Brave New World\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title) VALUES(\"2374009213487\", 2, \"1931\", (SELECT publisherID FROM publishers WHERE publisherName = \"Warner Bros Global Publishing\"), 14.99, \"The Sound and the Fury\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title) VALUES(\"1742009834762\", 3, \"1940\", (SELECT publisherID FROM publishers WHERE publisherName = \"Modern Library\"), 10.02, \"Darkness at Noon\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title) VALUES(\"4902348764122\", 1, \"1957\", (SELECT publisherID FROM publishers WHERE publisherName = \"Publishers Group West\"), 12.22, \"Atlas Shrugged\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title) VALUES(\"2489092387645\", 3, \"1943\", (SELECT publisherID FROM publishers WHERE publisherName = \"Crown Publishers, Inc.\"), 11.4, \"The Fountainhead\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title) VALUES(\"9804383119811\", 1, \"1982\", (SELECT publisherID FROM publishers WHERE publisherName = \"Harper Collins Publishing Co\"), 15.93, \"Battlefield Earth\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title) VALUES(\"2984509238452\", 1, \"1954\", (SELECT publisherID FROM publishers WHERE publisherName = \"St. Martin's Press\"), 23, \"The Lord of the Rings\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title) VALUES(\"1345230982345\", 3, \"1960\", (SELECT publisherID FROM publishers WHERE publisherName = \"Allworth Press\"), 15.22, \"To Kill a Mockingbird\");\n",
-            "INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title) VALUES(\"9302340119475\", 1, \"1966\", (SELECT publisherID FROM publishers WHERE publisherName = \"German Publishers\"), 15.99, \"Dune\");"
+     * Seed data for the 'publishers' table: { publisherName }.
+     */
+    static final String[][] PUBLISHERS = {
+            {"Signet Books"},
+            {"Pearson"},
+            {"ThomsonReuters"},
+            {"Penguin Random"},
+            {"Wiley"},
+            {"Nature America"},
+            {"Scholastic, Inc."},
+            {"Warner Bros Global Publishing"},
+            {"Modern Library"},
+            {"Publishers Group West"},
+            {"Crown Publishers, Inc."},
+            {"Harper Collins Publishing Co"},
+            {"St. Martin's Press"},
+            {"Allworth Press"},
+            {"German Publishers"}
     };
 
     /**
-     * SQL code that inserts data into the 'authorISBN' table.
-     * This table generates data that already exists in the 'authors' and 'titles' table; it includes the authorID
-     * and isbn data from 'authors' and 'titles', respectively. We do this by including two SELECT statements in
-     * our insertion statements.
-     * The first SELECT statement gets an authorID from the 'authors' table.
-     * The second SELECT statement gets an ISBN from the 'titles' table.
-     */
-    static final String[] INSERT_INTO_AUTHOR_ISBN = {
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"Steven\" AND lastName = \"King\"), (SELECT isbn FROM titles WHERE title = \"Harry Potter\"));\n",
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"J.K.\" AND lastName = \"Rowling\"), (SELECT isbn FROM titles WHERE title = \"The Running Man\"));\n",
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"Susan\" AND lastName = \"McBride\"), (SELECT isbn FROM titles WHERE title = \"Ulysses\"));\n",
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"Christopher\" AND lastName = \"Mari\"), (SELECT isbn FROM titles WHERE title = \"The Great Gatsby\"));\n",
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"James\" AND lastName = \"Patterson\"), (SELECT isbn FROM titles WHERE title = \"Lolita\"));\n",
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"James\" AND lastName = \"Joyce\"), (SELECT isbn FROM titles WHERE title = \"Brave New World\"));\n",
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"Scott\" AND lastName = \"Fitzgerald\"), (SELECT isbn FROM titles WHERE title = \"The Sound and the Fury\"));\n",
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"Vladimir\" AND lastName = \"Nabokov\"), (SELECT isbn FROM titles WHERE title = \"Darkness at Noon\"));\n",
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"William\" AND lastName = \"Faulkner\"), (SELECT isbn FROM titles WHERE title = \"Atlas Shrugged\"));\n",
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"Aldous\" AND lastName = \"Huxley\"), (SELECT isbn FROM titles WHERE title = \"The Fountainhead\"));\n",
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"Arthur\" AND lastName = \"Koestler\"), (SELECT isbn FROM titles WHERE title = \"Battlefield Earth\"));\n",
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"Ayn\" AND lastName = \"Rand\"), (SELECT isbn FROM titles WHERE title = \"The Lord of the Rings\"));\n",
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"Ron\" AND lastName = \"Hubbard\"), (SELECT isbn FROM titles WHERE title = \"To Kill a Mockingbird\"));\n",
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"John\" AND lastName = \"Tolkein\"), (SELECT isbn FROM titles WHERE title = \"Dune\"));\n",
-            "INSERT INTO authorISBN (authorID, isbn) VALUES ((SELECT authorID FROM authors WHERE firstName = \"Harper\" AND lastName = \"Lee\"), (SELECT isbn FROM titles WHERE title = \"The Great Penguin\"));"
+     * Seed data for the 'titles' table: { isbn, editionNumber, Year, publisherName, price, title }.
+     * The publisher is referenced by name and resolved to its publisherID when the row is inserted.
+     */
+    static final String[][] TITLES = {
+            {"9780451001234", "1", "2000", "Signet Books", "10.11", "Harry Potter"},
+            {"9780451115089", "1", "1982", "Pearson", "14.99", "The Running Man"},
+            {"9780451111111", "1", "1982", "Pearson", "15.99", "A Running Man"},
+            {"9780451110000", "1", "1982", "Pearson", "16.99", "Zzz Running Man"},
+            {"9450260214523", "1", "1992", "ThomsonReuters", "26.00", "Ulysses"},
+            {"9780451240599", "1", "1933", "Penguin Random", "14.99", "The Great Penguin"},
+            {"1024483866640", "2", "1925", "Wiley", "19.22", "The Great Gatsby"},
+            {"4303004852112", "1", "1955", "Nature America", "19.1", "Lolita"},
+            {"3459073487102", "1", "1932", "Scholastic, Inc.", "12.2", "Brave New World"},
+            {"2374009213487", "2", "1931", "Warner Bros Global Publishing", "14.99", "The Sound and the Fury"},
+            {"1742009834762", "3", "1940", "Modern Library", "10.02", "Darkness at Noon"},
+            {"4902348764122", "1", "1957", "Publishers Group West", "12.22", "Atlas Shrugged"},
+            {"2489092387645", "3", "1943", "Crown Publishers, Inc.", "11.4", "The Fountainhead"},
+            {"9804383119811", "1", "1982", "Harper Collins Publishing Co", "15.93", "Battlefield Earth"},
+            {"2984509238452", "1", "1954", "St. Martin's Press", "23", "The Lord of the Rings"},
+            {"1345230982345", "3", "1960", "Allworth Press", "15.22", "To Kill a Mockingbird"},
+            {"9302340119475", "1", "1966", "German Publishers", "15.99", "Dune"}
+    };
+
+    /**
+     * Seed data for the 'authorISBN' table: { firstName, lastName, title }.
+     * The author and title are referenced by name and resolved to an authorID and isbn when the row is inserted.
+     */
+    static final String[][] AUTHOR_ISBNS = {
+            {"Steven", "King", "Harry Potter"},
+            {"J.K.", "Rowling", "The Running Man"},
+            {"Susan", "McBride", "Ulysses"},
+            {"Christopher", "Mari", "The Great Gatsby"},
+            {"James", "Patterson", "Lolita"},
+            {"James", "Joyce", "Brave New World"},
+            {"Scott", "Fitzgerald", "The Sound and the Fury"},
+            {"Vladimir", "Nabokov", "Darkness at Noon"},
+            {"William", "Faulkner", "Atlas Shrugged"},
+            {"Aldous", "Huxley", "The Fountainhead"},
+            {"Arthur", "Koestler", "Battlefield Earth"},
+            {"Ayn", "Rand", "The Lord of the Rings"},
+            {"Ron", "Hubbard", "To Kill a Mockingbird"},
+            {"John", "Tolkein", "Dune"},
+            {"Harper", "Lee", "The Great Penguin"}
     };
 
     private SQL() {
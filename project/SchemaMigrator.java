@@ -0,0 +1,225 @@
+// Import SQL package
+import java.sql.*;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Brings the catalog schema up to SQL.SCHEMA_VERSION without dropping any data.
+ *
+ * The 'schemaVersion' table records which version the database started from and every migration step
+ *  applied since. On each run the migrator reads it and applies only the steps that are missing, so
+ *  running it against a current database costs a couple of small queries:
+ * - an empty database gets the current table definitions and is recorded as SQL.SCHEMA_VERSION,
+ * - a database with the catalog tables but no version rows (created before this class existed) is
+ *   recorded as the version its tables match, and then migrated from there,
+ * - the steps of every newer entry in MIGRATIONS are applied in order, each recorded as soon as it succeeds.
+ * MySQL commits every DDL statement on its own, so recording steps one by one means a run that fails
+ *  halfway resumes at the failed step instead of repeating the ones that already went through.
+ *
+ * On MySQL the migrator holds the named lock SQL.GET_SCHEMA_LOCK from reading the versions until the last
+ *  step is recorded, so a second program starting at the same time waits and then finds nothing left to do.
+ *  Other databases have no such lock; there only one migrator should run against a database at a time.
+ */
+public class SchemaMigrator {
+
+    /**
+     * The steps that bring a database of the previous version up to each version, oldest first.
+     * A new entry is added whenever SQL.SCHEMA_VERSION is increased.
+     */
+    static final List<Migration> MIGRATIONS = List.of(
+            new Migration(2, "VARCHAR names, SMALLINT year, DECIMAL price and catalog indexes", SQL.MIGRATE_TO_VERSION_2),
+            new Migration(3, "updatedAt change-tracking columns", SQL.MIGRATE_TO_VERSION_3),
+            new Migration(4, "import checkpoints keyed by file", SQL.MIGRATE_TO_VERSION_4));
+
+    // How long migrate() waits for another migrator to finish
+    static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private final Connection conn;
+
+    /**
+     * @param conn the connection the schema is migrated through
+     */
+    public SchemaMigrator(Connection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * Create or migrate the catalog tables as needed.
+     * @return the schema version the database is at afterwards
+     */
+    public int migrate() throws SQLException {
+        boolean locked = lock();
+        try {
+            return migrateLocked();
+        } finally {
+            if (locked) {
+                unlock();
+            }
+        }
+    }
+
+    private int migrateLocked() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(SQL.CREATE_SCHEMA_VERSION_TABLE);
+            Map<Integer, Set<Integer>> applied = appliedSteps(stmt);
+
+            int version = baselineVersion(applied);
+            if (version == 0) {
+                version = existingVersion();
+                if (version == 0) {
+                    System.out.println("Creating tables (schema version " + SQL.SCHEMA_VERSION + ")");
+                    stmt.execute(SQL.CREATE_AUTHORS_TABLE);
+                    stmt.execute(SQL.CREATE_PUBLISHERS_TABLE);
+                    stmt.execute(SQL.CREATE_TITLES_TABLE);
+                    stmt.execute(SQL.CREATE_AUTHOR_ISBN_TABLE);
+                    stmt.execute(SQL.CREATE_IMPORT_CHECKPOINT_TABLE);
+                    version = SQL.SCHEMA_VERSION;
+                    record(version, 0, "created tables");
+                } else {
+                    record(version, 0, "existing tables");
+                }
+            }
+
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version() <= version) {
+                    continue;
+                }
+                Set<Integer> done = applied.getOrDefault(migration.version(), Set.of());
+                String[] steps = migration.steps();
+                for (int step = 1; step <= steps.length; step++) {
+                    if (!done.contains(step)) {
+                        System.out.println("Migrating to schema version " + migration.version() + ", step " + step + " of " + steps.length);
+                        stmt.execute(steps[step - 1]);
+                        record(migration.version(), step, migration.description());
+                    }
+                }
+                version = migration.version();
+            }
+            return version;
+        }
+    }
+
+    /**
+     * @param table the name of a table; it is looked up in the database's metadata, and only the name found
+     *  there is put in the query, quoted
+     * @return true if the table has no rows
+     */
+    public boolean isEmpty(String table) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        String name;
+        try (ResultSet rs = meta.getTables(conn.getCatalog(), null, table, new String[] {"TABLE"})) {
+            if (!rs.next()) {
+                throw new SQLException("No table named " + table);
+            }
+            name = rs.getString("TABLE_NAME");
+        }
+        String quote = meta.getIdentifierQuoteString().trim();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM " + quote + name + quote + " LIMIT 1")) {
+            return !rs.next();
+        }
+    }
+
+    /**
+     * Take the schema lock on MySQL, waiting up to LOCK_TIMEOUT_SECONDS for another migrator to release it.
+     * @return true if the lock was taken, false on a database without named locks
+     */
+    private boolean lock() throws SQLException {
+        if (!"MySQL".equals(conn.getMetaData().getDatabaseProductName())) {
+            return false;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(SQL.GET_SCHEMA_LOCK)) {
+            ps.setInt(1, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Another program has been migrating the schema for more than "
+                                           + LOCK_TIMEOUT_SECONDS + " seconds");
+                }
+            }
+        }
+        return true;
+    }
+
+    private void unlock() throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(SQL.RELEASE_SCHEMA_LOCK)) {
+            rs.next();
+        }
+    }
+
+    /**
+     * @return the recorded steps by version
+     */
+    private static Map<Integer, Set<Integer>> appliedSteps(Statement stmt) throws SQLException {
+        Map<Integer, Set<Integer>> applied = new HashMap<>();
+        try (ResultSet rs = stmt.executeQuery(SQL.SELECT_SCHEMA_VERSION_STEPS)) {
+            while (rs.next()) {
+                applied.computeIfAbsent(rs.getInt("version"), v -> new HashSet<>()).add(rs.getInt("step"));
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * @return the version recorded with step 0, or 0 if the database has no version rows yet
+     */
+    private static int baselineVersion(Map<Integer, Set<Integer>> applied) {
+        int baseline = 0;
+        for (Map.Entry<Integer, Set<Integer>> entry : applied.entrySet()) {
+            if (entry.getValue().contains(0) && entry.getKey() > baseline) {
+                baseline = entry.getKey();
+            }
+        }
+        return baseline;
+    }
+
+    /**
+     * Work out the version of catalog tables that were created without a 'schemaVersion' table.
+     * @return 0 if there are no catalog tables, 1 if 'titles' still has the CHAR year of the original
+     *  definitions, 4 if 'importCheckpoint' has the importId column, 3 if 'authors' has the updatedAt
+     *  column, and 2 otherwise
+     */
+    private int existingVersion() throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        if (!hasTable(meta, "authors")) {
+            return 0;
+        }
+        try (ResultSet rs = meta.getColumns(conn.getCatalog(), null, "titles", "Year")) {
+            if (rs.next() && rs.getString("TYPE_NAME").toUpperCase().startsWith("CHAR")) {
+                return 1;
+            }
+        }
+        try (ResultSet rs = meta.getColumns(conn.getCatalog(), null, "importCheckpoint", "importId")) {
+            if (rs.next()) {
+                return 4;
+            }
+        }
+        try (ResultSet rs = meta.getColumns(conn.getCatalog(), null, "authors", "updatedAt")) {
+            return rs.next() ? 3 : 2;
+        }
+    }
+
+    private boolean hasTable(DatabaseMetaData meta, String table) throws SQLException {
+        try (ResultSet rs = meta.getTables(conn.getCatalog(), null, table, new String[] {"TABLE"})) {
+            return rs.next();
+        }
+    }
+
+    private void record(int version, int step, String description) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SQL.INSERT_SCHEMA_VERSION_STEP)) {
+            ps.setInt(1, version);
+            ps.setInt(2, step);
+            ps.setString(3, description);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * The statements that bring a database of version - 1 up to 'version', one step each.
+     */
+    record Migration(int version, String description, String... steps) {
+    }
+}
@@ -0,0 +1,133 @@
+// Import SQL package
+import java.sql.*;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that refreshing a CatalogSnapshot gives the same snapshot as loading it again.
+ *
+ * The check recreates the tables, loads a synthetic catalog and a snapshot of it, and then runs several
+ *  rounds of changes: new authors whose names differ from others only in case or accents, renamed
+ *  authors, publishers and titles, new titles without a year or with ISBNs that are not numbers, and new
+ *  authorISBN rows. After every round the snapshot is refreshed, a second snapshot is loaded from scratch,
+ *  and every query of the two (all authors, all publishers, the books of every publisher and the titles
+ *  of every author) must return the same rows in the same order. The refreshed snapshot is carried into
+ *  the next round, so later rounds merge into snapshots that were themselves refreshed.
+ *
+ * The database is chosen like in JDBC.main (-Ddb.url, -Ddb.user, -Ddb.password); its tables are dropped.
+ * It runs on MySQL and on H2 in MySQL mode. The exit status is 0 when every round matches and 1 otherwise,
+ *  including when the check cannot run. The snapshot-check profile of pom.xml runs it in the verify phase:
+ *   mvn -P h2,snapshot-check verify [-Dsnapshot.titles=3000]
+ *
+ * Usage: java SnapshotCheck [titles] [rounds]
+ */
+public class SnapshotCheck {
+
+    static final int DEFAULT_TITLES = 3_000;
+    static final int DEFAULT_ROUNDS = 5;
+    // Changes of each kind per round
+    private static final int CHANGES = 20;
+
+    public static void main(String[] args) {
+        int titles = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TITLES;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+        boolean same = false;
+        try (ConnectionPool pool = ConnectionPool.fromProperties(System.getProperties());
+             Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement()) {
+            System.out.println("Loading " + titles + " titles...");
+            JDBC.createTables(stmt);
+            CatalogGenerator generator = CatalogGenerator.withDefaults(CatalogBenchmark.SEED, titles);
+            generator.load(new BulkLoader(conn, BulkLoader.DEFAULT_BATCH_SIZE));
+            CatalogSnapshot snapshot = CatalogSnapshot.load(conn);
+            System.out.println("Snapshot: " + snapshot);
+
+            Random random = new Random(CatalogBenchmark.SEED);
+            same = true;
+            for (int round = 0; round < rounds && same; round++) {
+                change(stmt, generator, random, round);
+                long start = System.nanoTime();
+                CatalogSnapshot refreshed = snapshot.refresh(conn);
+                double millis = (System.nanoTime() - start) / 1e6;
+                String difference = firstDifference(dump(refreshed), dump(CatalogSnapshot.load(conn)));
+                same = difference == null;
+                System.out.printf("Round %d: refreshed in %.1f ms, %s\n", round + 1, millis,
+                        same ? "same as a new load" : "differs from a new load");
+                if (!same) {
+                    System.out.println(difference);
+                }
+                snapshot = refreshed;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            same = false;
+        }
+
+        System.out.println();
+        if (same) {
+            System.out.println("Refreshed snapshots match loaded ones.");
+        } else {
+            System.out.println("Refreshed snapshot does not match a new load.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Make one round of changes of every kind the snapshot merges on refresh.
+     */
+    private static void change(Statement stmt, CatalogGenerator generator, Random random, int round) throws SQLException {
+        for (int i = 0; i < CHANGES; i++) {
+            String isbn = "X" + round + "_" + i;
+            stmt.executeUpdate("INSERT INTO authors (firstName, lastName) VALUES ('Éva" + random.nextInt(5) + "', '"
+                    + (random.nextBoolean() ? "ádams" : "Adams") + "')");
+            stmt.executeUpdate("UPDATE authors SET lastName = 'Zz" + random.nextInt(100) + "' WHERE authorID = "
+                    + (1 + random.nextInt(generator.authorCount())));
+            stmt.executeUpdate("UPDATE titles SET title = 'Retitled " + random.nextInt(1000) + "', price = 1.23 WHERE isbn = '"
+                    + generator.title(random.nextInt(generator.titleCount()))[0] + "'");
+            stmt.executeUpdate("INSERT INTO titles (isbn, editionNumber, Year, publisherID, price, title) VALUES ('" + isbn
+                    + "', 1, NULL, " + (1 + random.nextInt(generator.publisherCount())) + ", 9.99, 'new " + random.nextInt(50) + "')");
+            stmt.executeUpdate("INSERT INTO authorISBN (authorID, isbn) VALUES ("
+                    + (1 + random.nextInt(generator.authorCount())) + ", '" + isbn + "')");
+        }
+        // An accented name, and one that another publisher already has
+        stmt.executeUpdate("UPDATE publishers SET publisherName = 'Péarson " + round + "' WHERE publisherID = "
+                + (1 + round % generator.publisherCount()));
+        stmt.executeUpdate("UPDATE publishers SET publisherName = 'pearson " + round + "' WHERE publisherID = "
+                + (1 + (round + generator.publisherCount() / 2) % generator.publisherCount()));
+    }
+
+    /**
+     * @return the result of every query of the snapshot, one line per query
+     */
+    private static String[] dump(CatalogSnapshot snapshot) {
+        List<Author> authors = snapshot.authorsByLastName();
+        List<Publisher> publishers = snapshot.allPublishers();
+        String[] lines = new String[2 + publishers.size() + authors.size()];
+        int n = 0;
+        lines[n++] = "authorsByLastName " + authors;
+        lines[n++] = "allPublishers " + publishers;
+        for (Publisher publisher : publishers) {
+            lines[n++] = "booksByPublisher(" + publisher.publisherName() + ") "
+                    + snapshot.booksByPublisher(publisher.publisherName());
+        }
+        for (Author author : authors) {
+            lines[n++] = "titlesByAuthor(" + author.firstName() + " " + author.lastName() + ") "
+                    + snapshot.titlesByAuthor(author.firstName(), author.lastName());
+        }
+        return lines;
+    }
+
+    /**
+     * @return the first query whose results differ, with both results, or null if all are the same
+     */
+    private static String firstDifference(String[] refreshed, String[] loaded) {
+        for (int i = 0; i < Math.max(refreshed.length, loaded.length); i++) {
+            String a = i < refreshed.length ? refreshed[i] : "(missing)";
+            String b = i < loaded.length ? loaded[i] : "(missing)";
+            if (!a.equals(b)) {
+                return "  refreshed: " + a + "\n  loaded:    " + b;
+            }
+        }
+        return null;
+    }
+}
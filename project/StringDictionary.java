@@ -0,0 +1,103 @@
+import java.util.Arrays;
+
+/**
+ * Dictionary encoding of strings: every distinct string is stored once and referred to by an int code,
+ *  so a column of repeated names becomes an int array. Codes are assigned in order from 0; null is -1.
+ *
+ * Codes are looked up in an open-addressing table of ints, so no Integer or map entry is allocated
+ *  per string. Not thread safe while strings are being added; safe to read from any thread afterwards.
+ */
+final class StringDictionary {
+
+    private String[] values;
+    private int size;
+    // code + 1 of the string in each slot, 0 for an empty slot; at most half full
+    private int[] slots;
+
+    StringDictionary(int expectedSize) {
+        this.values = new String[Math.max(16, expectedSize)];
+        this.slots = new int[tableSize(values.length)];
+    }
+
+    private StringDictionary(String[] values, int size, int[] slots) {
+        this.values = values;
+        this.size = size;
+        this.slots = slots;
+    }
+
+    /**
+     * @return an independent copy that can be extended without affecting this dictionary
+     */
+    StringDictionary copy() {
+        return new StringDictionary(Arrays.copyOf(values, Math.max(16, size + size / 4)), size, slots.clone());
+    }
+
+    /**
+     * @return the code of the string, adding it if it is new
+     */
+    int encode(String value) {
+        if (value == null) {
+            return -1;
+        }
+        int slot = slotOf(value);
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = value;
+        slots[slot] = ++size;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    /**
+     * @return the code of the string, or -1 if it is not in the dictionary
+     */
+    int find(String value) {
+        if (value == null) {
+            return -1;
+        }
+        return slots[slotOf(value)] - 1;
+    }
+
+    String decode(int code) {
+        return code < 0 ? null : values[code];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int slotOf(String value) {
+        int mask = slots.length - 1;
+        int slot = spread(value.hashCode()) & mask;
+        while (slots[slot] != 0 && !values[slots[slot] - 1].equals(value)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int code = 0; code < size; code++) {
+            int slot = spread(values[code].hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = code + 1;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int tableSize(int capacity) {
+        return Integer.highestOneBit(Math.max(2, capacity) * 4 - 1);
+    }
+}
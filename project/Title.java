@@ -0,0 +1,8 @@
+import java.math.BigDecimal;
+
+/**
+ * One row of the 'titles' table.
+ * The year is null when the row has none; the price keeps the two decimal places of DECIMAL(8,2).
+ */
+public record Title(String isbn, String title, int editionNumber, Short year, int publisherID, BigDecimal price) {
+}
@@ -0,0 +1,364 @@
+// Import SQL package
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.sql.DataSource;
+
+/**
+ * Collects catalog writes from any number of callers and commits them in groups.
+ *
+ * Every write is queued and its caller gets a future right away. A background thread takes the
+ *  queued writes and commits them together in one transaction as soon as 'maxBatchSize' writes are
+ *  waiting or the oldest waiting write has waited 'maxDelayMillis', whichever comes first, so many
+ *  writes share one commit (and one log flush on the server) instead of paying for one each.
+ * Within a group the writes run in the order they were queued; consecutive writes of the same kind
+ *  are sent as one JDBC batch, which the MySQL driver rewrites into multi-row statements. Writes that
+ *  must fail when they change no rows (adding a title or an author's ISBN by name) run on their own,
+ *  since a rewritten batch reports no count per write.
+ *
+ * A future completes only after the transaction holding its write has committed, with the generated
+ *  ID (authors and publishers) or the number of rows changed. If the group fails, it is rolled back
+ *  and every write in it is retried in a transaction of its own, so only the writes that fail on
+ *  their own complete exceptionally. The CatalogCache entries a write affects are invalidated
+ *  before its future completes.
+ *
+ * Futures complete on the queue's thread; callers with slow follow-up work should use the *Async
+ *  methods of CompletableFuture. Close the queue to commit the writes still waiting and stop it.
+ */
+public class WriteBehindQueue implements AutoCloseable {
+
+    static final int DEFAULT_MAX_BATCH_SIZE = 500;
+    static final long DEFAULT_MAX_DELAY_MILLIS = 5;
+    // Callers block when this many batches worth of writes are waiting, so a stalled database cannot exhaust memory
+    private static final int QUEUED_BATCHES = 16;
+    private static final QueryMetrics FLUSH = Metrics.query("write-behind.commit");
+
+    private final DataSource dataSource;
+    private final CatalogCache cache;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Write> queue;
+    private final Thread flusher;
+    // Held shared by enqueue() from its check of 'closed' until the write is queued, and exclusively by close()
+    //  to set 'closed', so no write can be queued after close() has started waiting for the last group
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    /**
+     * @param dataSource where the queue borrows a connection for every group
+     * @param cache the cache to keep consistent with the writes
+     * @param maxBatchSize the most writes committed together
+     * @param maxDelayMillis the longest a write waits for others to share its commit
+     */
+    public WriteBehindQueue(DataSource dataSource, CatalogCache cache, int maxBatchSize, long maxDelayMillis) {
+        if (maxBatchSize < 1 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Invalid settings: maxBatchSize " + maxBatchSize + ", maxDelayMillis " + maxDelayMillis);
+        }
+        this.dataSource = dataSource;
+        this.cache = cache;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.queue = new LinkedBlockingQueue<>(maxBatchSize * QUEUED_BATCHES);
+        this.flusher = new Thread(this::run, "write-behind-queue");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * @return the generated authorID
+     */
+    public CompletableFuture<Integer> addAuthor(String firstName, String lastName) {
+        return enqueue(SQL.INSERT_AUTHOR, true, ps -> {
+            ps.setString(1, firstName);
+            ps.setString(2, lastName);
+        }, () -> cache.invalidateAuthor(firstName, lastName));
+    }
+
+    /**
+     * @return the number of authors changed
+     */
+    public CompletableFuture<Integer> updateAuthorFirstName(String oldFirstName, String newFirstName) {
+        return enqueue(SQL.UPDATE_AUTHOR_FIRST_NAME, false, ps -> {
+            ps.setString(1, newFirstName);
+            ps.setString(2, oldFirstName);
+        }, () -> {
+            cache.invalidateAuthorsNamed(oldFirstName);
+            cache.invalidateAuthorsNamed(newFirstName);
+        });
+    }
+
+    /**
+     * @return the generated publisherID
+     */
+    public CompletableFuture<Integer> addPublisher(String publisherName) {
+        return enqueue(SQL.INSERT_PUBLISHER, true, ps -> ps.setString(1, publisherName),
+                () -> cache.invalidatePublisher(publisherName));
+    }
+
+    /**
+     * @return the number of publishers changed
+     */
+    public CompletableFuture<Integer> renamePublisher(String oldName, String newName) {
+        return enqueue(SQL.UPDATE_PUBLISHER_NAME, false, ps -> {
+            ps.setString(1, newName);
+            ps.setString(2, oldName);
+        }, () -> {
+            cache.invalidatePublisher(oldName);
+            cache.invalidatePublisher(newName);
+        });
+    }
+
+    /**
+     * Add a title of an existing publisher. Its authors are added with addAuthorISBN().
+     * @return 1; the future fails if there is no publisher with the given name
+     */
+    public CompletableFuture<Integer> addTitle(String isbn, String title, int editionNumber, int year,
+                                               String publisherName, BigDecimal price) {
+        return enqueue(SQL.INSERT_TITLE_OF_PUBLISHER, false, ps -> {
+            ps.setString(1, isbn);
+            ps.setInt(2, editionNumber);
+            ps.setShort(3, (short) year);
+            ps.setBigDecimal(4, price);
+            ps.setString(5, title);
+            ps.setString(6, publisherName);
+        }, () -> cache.invalidatePublisher(publisherName), "Unknown publisher: " + publisherName);
+    }
+
+    /**
+     * Link an existing author to an existing title.
+     * @return 1; the future fails if there is no author with the given name
+     */
+    public CompletableFuture<Integer> addAuthorISBN(String firstName, String lastName, String isbn) {
+        return enqueue(SQL.INSERT_AUTHOR_ISBN_OF_AUTHOR, false, ps -> {
+            ps.setString(1, isbn);
+            ps.setString(2, firstName);
+            ps.setString(3, lastName);
+        }, () -> cache.invalidateAuthor(firstName, lastName), "Unknown author: " + firstName + " " + lastName);
+    }
+
+    /**
+     * Commit the writes still waiting and stop the queue. Writes made after close() fail.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Writes still queued if close() was interrupted before the queue's thread finished
+        List<Write> left = new ArrayList<>();
+        queue.drainTo(left);
+        for (Write write : left) {
+            write.future.completeExceptionally(new SQLException("Write-behind queue is closed"));
+        }
+    }
+
+    private CompletableFuture<Integer> enqueue(String sql, boolean generatedKey, ParameterBinder binder, Runnable invalidate) {
+        return enqueue(sql, generatedKey, binder, invalidate, null);
+    }
+
+    /**
+     * @param noRowMessage if not null, the write fails with this message when it changes no rows
+     */
+    private CompletableFuture<Integer> enqueue(String sql, boolean generatedKey, ParameterBinder binder,
+                                               Runnable invalidate, String noRowMessage) {
+        Write write = new Write(sql, generatedKey, binder, invalidate, noRowMessage);
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                write.future.completeExceptionally(new SQLException("Write-behind queue is closed"));
+                return write.future;
+            }
+            queue.put(write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            write.future.completeExceptionally(e);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return write.future;
+    }
+
+    private void run() {
+        List<Write> group = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Write first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                long deadline = first.queuedAt + maxDelayNanos;
+                while (group.size() < maxBatchSize) {
+                    queue.drainTo(group, maxBatchSize - group.size());
+                    long wait = deadline - System.nanoTime();
+                    if (group.size() == maxBatchSize || wait <= 0 || closed) {
+                        break;
+                    }
+                    Write next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+                commit(group);
+            } catch (InterruptedException e) {
+                // Only close() stops the queue; the writes taken off it so far are committed, not dropped
+                if (!group.isEmpty()) {
+                    commit(group);
+                }
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    /**
+     * Commit the group in one transaction, or each write in its own if that fails.
+     */
+    private void commit(List<Write> group) {
+        long start = System.nanoTime();
+        try {
+            int[] results = execute(group);
+            FLUSH.recordBatch(start, group.size(), group.size());
+            complete(group, results);
+        } catch (SQLException | RuntimeException e) {
+            FLUSH.error();
+            if (group.size() == 1) {
+                group.get(0).future.completeExceptionally(e);
+                return;
+            }
+            for (Write write : group) {
+                List<Write> single = List.of(write);
+                try {
+                    complete(single, execute(single));
+                } catch (SQLException | RuntimeException retryFailure) {
+                    write.future.completeExceptionally(retryFailure);
+                }
+            }
+        }
+    }
+
+    /**
+     * Run the writes in one transaction, batching consecutive writes of the same kind.
+     * @return the generated key or update count of every write
+     */
+    private int[] execute(List<Write> writes) throws SQLException {
+        int[] results = new int[writes.size()];
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int from = 0;
+                while (from < writes.size()) {
+                    int to = from + 1;
+                    // A batched write may be counted as SUCCESS_NO_INFO, which cannot tell whether it changed a row
+                    while (to < writes.size() && writes.get(from).noRowMessage == null
+                            && writes.get(to).sameKind(writes.get(from))) {
+                        to++;
+                    }
+                    executeBatch(conn, writes.subList(from, to), results, from);
+                    from = to;
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    private static void executeBatch(Connection conn, List<Write> batch, int[] results, int offset) throws SQLException {
+        Write kind = batch.get(0);
+        int keyMode = kind.generatedKey ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS;
+        try (PreparedStatement ps = conn.prepareStatement(kind.sql, keyMode)) {
+            if (batch.size() == 1 && !kind.generatedKey) {
+                kind.binder.bind(ps);
+                results[offset] = ps.executeUpdate();
+                return;
+            }
+            for (Write write : batch) {
+                write.binder.bind(ps);
+                ps.addBatch();
+            }
+            int[] counts = ps.executeBatch();
+            if (kind.generatedKey) {
+                // Generated keys come back in the same order the rows were added to the batch
+                int i = 0;
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    while (i < batch.size() && keys.next()) {
+                        results[offset + i++] = keys.getInt(1);
+                    }
+                }
+                if (i != batch.size()) {
+                    throw new SQLException("Expected " + batch.size() + " generated keys but got " + i);
+                }
+            } else {
+                for (int i = 0; i < counts.length; i++) {
+                    // Drivers that rewrite batches into multi-row statements may not report per-row counts
+                    results[offset + i] = counts[i] == Statement.SUCCESS_NO_INFO ? 1 : counts[i];
+                }
+            }
+        }
+    }
+
+    private static void complete(List<Write> writes, int[] results) {
+        for (int i = 0; i < writes.size(); i++) {
+            writes.get(i).invalidate.run();
+        }
+        for (int i = 0; i < writes.size(); i++) {
+            Write write = writes.get(i);
+            if (results[i] == 0 && write.noRowMessage != null) {
+                write.future.completeExceptionally(new SQLException(write.noRowMessage));
+            } else {
+                write.future.complete(results[i]);
+            }
+        }
+    }
+
+    /**
+     * Sets the parameters of a prepared statement.
+     */
+    private interface ParameterBinder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    /**
+     * One queued write: its statement, how to bind it, the cache entries it affects and its caller's future.
+     */
+    private static final class Write {
+        final String sql;
+        final boolean generatedKey;
+        final ParameterBinder binder;
+        final Runnable invalidate;
+        final String noRowMessage;
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+        final long queuedAt = System.nanoTime();
+
+        Write(String sql, boolean generatedKey, ParameterBinder binder, Runnable invalidate, String noRowMessage) {
+            this.sql = sql;
+            this.generatedKey = generatedKey;
+            this.binder = binder;
+            this.invalidate = invalidate;
+            this.noRowMessage = noRowMessage;
+        }
+
+        boolean sameKind(Write other) {
+            return sql.equals(other.sql);
+        }
+    }
+}